@@ -0,0 +1,12 @@
+#!/usr/bin/env bash
+
+# build the JMH benchmarks (bench/pom.xml) into target/benchmarks.jar, terminates if error occurred
+if ! mvn -q -f pom.xml package
+then
+    echo "********** BUILD FAILURE **********"
+    exit 1
+fi
+
+# run the benchmarks, writing bench/results.json; extra arguments are passed to JMH,
+# e.g. ./runbench.sh Search -p tasks=1000 runs only SearchBenchmark with 1000 tasks
+java -jar target/benchmarks.jar -rf json -rff results.json "$@"
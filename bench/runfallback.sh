@@ -0,0 +1,21 @@
+#!/usr/bin/env bash
+
+# Fallback for machines without Maven: times the same cases without JMH, so the numbers are
+# only a rough guide. Prefer runbench.sh.
+
+# create bin directory if it doesn't exist
+if [ ! -d "../bin-bench" ]
+then
+    mkdir ../bin-bench
+fi
+
+# compile the app and the benchmarks into the bin-bench folder, terminates if error occurred
+if ! javac -Xlint:none -d ../bin-bench $(find ../src/main/java ../src/bench/java -name '*.java')
+then
+    echo "********** BUILD FAILURE **********"
+    exit 1
+fi
+
+# run the benchmarks, writing bench/fallback-results.json; extra arguments (e.g. --sizes 1000 --only parse)
+# are passed through
+java -Xmx4g -classpath ../bin-bench nami.FallbackBenchmark --out fallback-results.json "$@"
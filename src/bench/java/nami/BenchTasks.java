@@ -0,0 +1,34 @@
+package nami;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Sample data shared by the JMH benchmarks and {@link FallbackBenchmark}.
+ */
+final class BenchTasks {
+    private BenchTasks() { }
+
+    /** Builds {@code n} tasks cycling through todos, dated deadlines and events. */
+    static List<Task> sample(int n) {
+        List<Task> tasks = new ArrayList<>(n);
+        LocalDate start = LocalDate.of(2019, 10, 15);
+        for (int i = 0; i < n; i++) {
+            Task t;
+            switch (i % 3) {
+            case 0:
+                t = new ToDo("read book " + i);
+                break;
+            case 1:
+                t = new Deadline("return book " + i, start.plusDays(i % 365));
+                break;
+            default:
+                t = new Event("project meeting " + i, "Mon 2pm", "4pm");
+                break;
+            }
+            if (i % 4 == 0) t.mark();
+            tasks.add(t);
+        }
+        return tasks;
+    }
+}
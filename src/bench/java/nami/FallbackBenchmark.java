@@ -0,0 +1,193 @@
+package nami;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+/**
+ * Dependency-free fallback for the JMH benchmarks in {@code src/jmh/java}, for machines
+ * without Maven or network access. It times the same hot paths in one JVM with a simple
+ * warmup and a volatile sink, without JMH's forks or compiler guards, so its numbers are
+ * only good for a rough look; compare releases with {@code bench/runbench.sh} instead.
+ * Results are written as JSON in the same shape as JMH's {@code -rf json} output.
+ * <p>
+ * Usage: {@code java -cp <classes> nami.FallbackBenchmark [--sizes 1000,100000] [--only find]
+ * [--out bench/fallback-results.json]}
+ */
+public class FallbackBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    /** Consumes benchmark results so the JIT cannot drop the measured work. */
+    static volatile int sink;
+
+    private final List<String> results = new ArrayList<>();
+    private String only = "";
+
+    /** One measured operation. */
+    interface Op {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1_000, 100_000, 1_000_000};
+        String out = "bench/fallback-results.json";
+        FallbackBenchmark bench = new FallbackBenchmark();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "--sizes":
+                sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                break;
+            case "--only":
+                bench.only = args[i + 1];
+                break;
+            case "--out":
+                out = args[i + 1];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        bench.parseBenchmarks();
+        for (int n : sizes) {
+            bench.sizedBenchmarks(n);
+        }
+        bench.write(Paths.get(out));
+    }
+
+    private void parseBenchmarks() throws Exception {
+        String[][] inputs = {
+            {"todo", "todo read book"},
+            {"deadline", "deadline return book /by 2019-10-15"},
+            {"event", "event project meeting /from Mon 2pm /to 4pm"},
+            {"mark", "mark 42"},
+            {"delete", "delete 7"},
+            {"find", "find return   book"},
+            {"list", "list"},
+        };
+        for (String[] in : inputs) {
+            String line = in[1];
+            measure("parse." + in[0], null, () -> Parser.parse(line));
+        }
+    }
+
+    private void sizedBenchmarks(int n) throws Exception {
+        String param = Integer.toString(n);
+        List<Task> tasks = BenchTasks.sample(n);
+        Path dir = Files.createTempDirectory("nami-bench");
+        try {
+            Storage storage = new Storage(dir.toString(), "nami.txt");
+            measure("storage.save", param, () -> {
+                storage.save(tasks);
+                return null;
+            });
+            measure("storage.load", param, () -> {
+                Storage reader = new Storage(dir.toString(), "nami.txt");
+                TaskList loaded = reader.load();
+                reader.close();
+                return loaded.size();
+            });
+            System.out.println("  storage latency at " + param + " tasks: " + storage.describeLatency());
+            storage.close();
+
+            TaskList list = new TaskList(tasks);
+            list.findByKeyword("warm"); // build the index outside the measurement
+            measure("find.hit", param, () -> list.findByKeyword("book 1").size());
+            measure("find.miss", param, () -> list.findByKeyword("zebra").size());
+            measure("find.scan", param, () -> list.findByKeyword("k 1").size());
+            measure("find.filter", param, () -> list.find("book", 'D', false).size());
+            list.findFuzzy("warm", (char) 0, null, 10); // likewise for the fuzzy index
+            measure("find.fuzzy", param, () -> list.findFuzzy("retrun bok", (char) 0, null, 10).size());
+
+            TaskList columns = new TaskList(true);
+            tasks.forEach(columns::add);
+            LocalDate from = LocalDate.of(2019, 11, 1);
+            LocalDate to = LocalDate.of(2019, 11, 30);
+            measure("scan.done.objects", param, list::countDone);
+            measure("scan.done.columns", param, columns::countDone);
+            measure("scan.due.objects", param, () -> list.dueBetween(from, to).size());
+            measure("scan.due.columns", param, () -> columns.dueBetween(from, to).size());
+
+            TaskList events = new TaskList();
+            LocalDateTime first = LocalDateTime.of(2019, 10, 15, 9, 0);
+            for (int i = 0; i < n; i++) {
+                LocalDateTime begins = first.plusMinutes(37L * i);
+                events.add(new Event("meeting " + i, begins.toString(), begins.plusHours(1).toString()));
+            }
+            LocalDateTime dayStart = first.plusDays(30);
+            LocalDateTime dayEnd = dayStart.plusDays(1);
+            events.eventsBetween(dayStart, dayEnd); // build the index outside the measurement
+            measure("events.overlap", param, () -> events.eventsBetween(dayStart, dayEnd).size());
+
+            Ui ui = new Ui(System.in, OutputStream.nullOutputStream(), true);
+            measure("ui.showList", param, () -> {
+                ui.showList(list.asList());
+                return null;
+            });
+        } finally {
+            try (var paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Warms up and measures {@code op}, recording the average time per call.
+     *
+     * @param param Task count for sized benchmarks, or {@code null}.
+     */
+    private void measure(String name, String param, Op op) throws Exception {
+        if (!name.startsWith(only)) return;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(op);
+        }
+        double[] samples = new double[MEASURE_ITERATIONS];
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            samples[i] = iteration(op);
+        }
+        double mean = Arrays.stream(samples).average().orElse(0);
+        double var = Arrays.stream(samples).map(s -> (s - mean) * (s - mean)).sum() / Math.max(1, samples.length - 1);
+        double error = 2 * Math.sqrt(var / samples.length); // ~95% interval half-width
+        System.out.printf(Locale.ROOT, "%-16s %10s %16.1f +- %.1f ns/op%n",
+                name, param == null ? "" : param, mean, error);
+        results.add(String.format(Locale.ROOT,
+                "  {\"benchmark\": \"nami.%s\", \"mode\": \"avgt\", \"params\": {%s}, "
+                        + "\"primaryMetric\": {\"score\": %.3f, \"scoreError\": %.3f, \"scoreUnit\": \"ns/op\"}}",
+                name, param == null ? "" : "\"tasks\": \"" + param + "\"", mean, error));
+    }
+
+    /** Runs {@code op} for at least one call and about {@link #ITERATION_NANOS}; returns ns/op. */
+    private static double iteration(Op op) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            Object r = op.run();
+            sink ^= r == null ? 0 : r.hashCode();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        return (double) elapsed / ops;
+    }
+
+    private void write(Path out) throws IOException {
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            w.println("[");
+            w.println(String.join(",\n", results));
+            w.println("]");
+        }
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+}
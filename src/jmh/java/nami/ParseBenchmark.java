@@ -0,0 +1,62 @@
+package nami;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * {@link Parser#parse} for each kind of command.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+    @Param({"todo", "deadline", "event", "mark", "delete", "find", "list"})
+    public String command;
+
+    private String line;
+
+    @Setup
+    public void setUp() {
+        switch (command) {
+        case "todo":
+            line = "todo read book";
+            break;
+        case "deadline":
+            line = "deadline return book /by 2019-10-15";
+            break;
+        case "event":
+            line = "event project meeting /from Mon 2pm /to 4pm";
+            break;
+        case "mark":
+            line = "mark 42";
+            break;
+        case "delete":
+            line = "delete 7";
+            break;
+        case "find":
+            line = "find return   book";
+            break;
+        default:
+            line = "list";
+            break;
+        }
+    }
+
+    @Benchmark
+    public Parser.Parsed parse() throws NamiException {
+        return Parser.parse(line);
+    }
+}
@@ -0,0 +1,45 @@
+package nami;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * Rendering a list of {@code tasks} tasks with {@link Ui#showList}, into a discarding stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int tasks;
+
+    private List<Task> list;
+    private Ui ui;
+
+    @Setup
+    public void setUp() {
+        list = new TaskList(BenchTasks.sample(tasks)).asList();
+        ui = new Ui(System.in, OutputStream.nullOutputStream(), true);
+    }
+
+    @Benchmark
+    public Ui showList() {
+        ui.showList(list);
+        return ui;
+    }
+}
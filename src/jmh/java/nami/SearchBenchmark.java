@@ -0,0 +1,108 @@
+package nami;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * Keyword, fuzzy, done and due searches over {@code tasks} tasks, with object and columnar
+ * lists, and event overlap queries. Indexes are built in setup, outside the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    private static final LocalDate FROM = LocalDate.of(2019, 11, 1);
+    private static final LocalDate TO = LocalDate.of(2019, 11, 30);
+    private static final LocalDateTime FIRST = LocalDateTime.of(2019, 10, 15, 9, 0);
+    private static final LocalDateTime DAY_START = FIRST.plusDays(30);
+    private static final LocalDateTime DAY_END = DAY_START.plusDays(1);
+
+    @Param({"1000", "100000", "1000000"})
+    public int tasks;
+
+    private TaskList list;
+    private TaskList columns;
+    private TaskList events;
+
+    @Setup
+    public void setUp() {
+        List<Task> sample = BenchTasks.sample(tasks);
+        list = new TaskList(sample);
+        list.findByKeyword("warm");
+        list.findFuzzy("warm", (char) 0, null, 10);
+        columns = new TaskList(true);
+        sample.forEach(columns::add);
+        events = new TaskList();
+        for (int i = 0; i < tasks; i++) {
+            LocalDateTime begins = FIRST.plusMinutes(37L * i);
+            events.add(new Event("meeting " + i, begins.toString(), begins.plusHours(1).toString()));
+        }
+        events.eventsBetween(DAY_START, DAY_END);
+    }
+
+    @Benchmark
+    public int findHit() {
+        return list.findByKeyword("book 1").size();
+    }
+
+    @Benchmark
+    public int findMiss() {
+        return list.findByKeyword("zebra").size();
+    }
+
+    @Benchmark
+    public int findScan() {
+        return list.findByKeyword("k 1").size();
+    }
+
+    @Benchmark
+    public int findFilter() {
+        return list.find("book", 'D', false).size();
+    }
+
+    @Benchmark
+    public int findFuzzy() {
+        return list.findFuzzy("retrun bok", (char) 0, null, 10).size();
+    }
+
+    @Benchmark
+    public int doneObjects() {
+        return list.countDone();
+    }
+
+    @Benchmark
+    public int doneColumns() {
+        return columns.countDone();
+    }
+
+    @Benchmark
+    public int dueObjects() {
+        return list.dueBetween(FROM, TO).size();
+    }
+
+    @Benchmark
+    public int dueColumns() {
+        return columns.dueBetween(FROM, TO).size();
+    }
+
+    @Benchmark
+    public int eventsOverlap() {
+        return events.eventsBetween(DAY_START, DAY_END).size();
+    }
+}
@@ -0,0 +1,68 @@
+package nami;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * Saving and loading a text snapshot of {@code tasks} tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int tasks;
+
+    private List<Task> sample;
+    private Path dir;
+    private Storage storage;
+
+    @Setup
+    public void setUp() throws IOException, NamiException {
+        sample = BenchTasks.sample(tasks);
+        dir = Files.createTempDirectory("nami-bench");
+        storage = new Storage(dir.toString(), "nami.txt");
+        storage.save(sample); // something for load() to read
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, NamiException {
+        storage.close();
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Storage save() throws NamiException {
+        storage.save(sample);
+        return storage;
+    }
+
+    @Benchmark
+    public int load() throws NamiException {
+        Storage reader = new Storage(dir.toString(), "nami.txt");
+        TaskList loaded = reader.load();
+        reader.close();
+        return loaded.size();
+    }
+}
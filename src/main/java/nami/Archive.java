@@ -0,0 +1,114 @@
+package nami;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+/**
+ * Completed tasks moved out of the list by {@code archive}. Each archive run appends one
+ * gzip member of storage lines, so the file is only ever appended to, and reading it back
+ * is a single gzip stream over all members. Searching streams through it and keeps only
+ * the requested page of matches, so the archive never has to fit in memory.
+ * <p>
+ * Appends are always forced to disk before returning, since the caller removes the tasks
+ * from the list afterwards. A failed append is cut off again; a crash in the middle of one
+ * can leave a torn last member, and reading stops there.
+ */
+final class Archive {
+    private static final int BUFFER = 1 << 16;
+
+    private final Path file;
+    private final Metrics metrics;
+
+    /** One page of matches from {@link #find}, with how many matched in all. */
+    static final class Matches {
+        final List<Task> page;
+        final int total;
+        final boolean torn; // the archive ended in the middle of a member
+
+        Matches(List<Task> page, int total, boolean torn) {
+            this.page = page;
+            this.total = total;
+            this.torn = torn;
+        }
+    }
+
+    Archive(Path file, Metrics metrics) {
+        this.file = file;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Appends {@code tasks} as one gzip member and forces it to disk.
+     *
+     * @throws IOException if the archive cannot be written; it is left as it was.
+     */
+    synchronized void append(List<Task> tasks) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(member, BUFFER), StandardCharsets.UTF_8)) {
+            for (Task t : tasks) {
+                String line = Storage.encode(t);
+                if (line == null) continue;
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        Files.createDirectories(file.getParent());
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = ch.size();
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(member.toByteArray());
+                ch.position(end);
+                while (buf.hasRemaining()) ch.write(buf);
+                long start = System.nanoTime();
+                ch.force(false);
+                metrics.fsyncs.record(System.nanoTime() - start);
+            } catch (IOException e) {
+                ch.truncate(end);
+                throw e;
+            }
+        }
+        metrics.snapshotBytes.addAndGet(member.size());
+    }
+
+    /**
+     * Scans the archive for tasks matching {@code filter}, oldest first.
+     *
+     * @param offset Matches to skip before the page.
+     * @param limit  Matches to keep, or 0 for all remaining.
+     */
+    synchronized Matches find(TaskFilter filter, int offset, int limit) throws IOException {
+        List<Task> page = new ArrayList<>();
+        if (!Files.exists(file)) return new Matches(page, 0, false);
+        int total = 0;
+        boolean torn = false;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!filter.matches(line)) continue; // cheap check on the raw line before decoding
+                Task t = Storage.decode(line);
+                if (t == null || !filter.accepts(t)) continue;
+                if (total >= offset && (limit == 0 || page.size() < limit)) page.add(t);
+                total++;
+            }
+        } catch (EOFException | ZipException e) {
+            torn = true;
+        }
+        return new Matches(page, total, torn);
+    }
+}
@@ -0,0 +1,196 @@
+package nami;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.CRC32;
+/**
+ * Compact binary snapshot format: a header, a fixed-width record table and a UTF-8 string heap.
+ * <pre>
+ * header  : int magic, int version, int count, int crc32 of everything after the header
+ * record  : byte type (T/D/E), byte flags (done, dated), short pad, int epochDay,
+ *           int descOff, int descLen, int aux1Off, int aux1Len, int aux2Off, int aux2Len
+ * heap    : UTF-8 bytes addressed by the offsets above, relative to the heap start
+ * </pre>
+ * Deadlines keep their raw {@code by} text in aux1 when they have no parsed date;
+ * events keep {@code from}/{@code to} in aux1/aux2. Version 1 files, written before the
+ * checksum existed, have 0 in its place and are read unchecked.
+ */
+final class BinaryTaskFile {
+    private static final int MAGIC = 0x4E414D42; // "NAMB"
+    private static final int VERSION = 2;
+    private static final int UNCHECKED_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_DATED = 2;
+
+    private BinaryTaskFile() { }
+
+    /**
+     * Writes {@code tasks} to {@code target}, replacing any existing content.
+     */
+    static void write(Path target, List<Task> tasks) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(HEADER_BYTES + RECORD_BYTES * tasks.size());
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        records.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0);
+        int count = 0;
+        for (Task t : tasks) {
+            byte type;
+            int flags = t.isDone() ? FLAG_DONE : 0;
+            int epochDay = 0;
+            String aux1 = "";
+            String aux2 = "";
+            if (t instanceof ToDo) {
+                type = 'T';
+            } else if (t instanceof Deadline) {
+                Deadline d = (Deadline) t;
+                type = 'D';
+                if (d.getByDate() != null) {
+                    flags |= FLAG_DATED;
+                    epochDay = (int) d.getByDate().toEpochDay();
+                } else {
+                    aux1 = d.getBy();
+                }
+            } else if (t instanceof Event) {
+                Event e = (Event) t;
+                type = 'E';
+                aux1 = e.getFrom();
+                aux2 = e.getTo();
+            } else {
+                continue;
+            }
+            records.put(type).put((byte) flags).putShort((short) 0).putInt(epochDay);
+            putString(records, heap, t.getDescription());
+            putString(records, heap, aux1);
+            putString(records, heap, aux2);
+            count++;
+        }
+        byte[] heapBytes = heap.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(records.array(), HEADER_BYTES, RECORD_BYTES * count);
+        crc.update(heapBytes);
+        records.putInt(8, count).putInt(12, (int) crc.getValue());
+        records.flip();
+        records.limit(HEADER_BYTES + RECORD_BYTES * count);
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (records.hasRemaining()) ch.write(records);
+            ByteBuffer strings = ByteBuffer.wrap(heapBytes);
+            while (strings.hasRemaining()) ch.write(strings);
+        }
+    }
+
+    /**
+     * Reads {@code source} into memory and validates its header, checksum and record table.
+     * Tasks are only decoded when {@link Table#task(int)} is called. The file is read rather
+     * than mapped and closed before returning, so a later save can rename a new snapshot over
+     * it, which Windows refuses while a mapping is open.
+     *
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    static Table open(Path source) throws IOException {
+        try (FileChannel ch = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Binary snapshot too large to read");
+            ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) throw new IOException("Binary snapshot shrank while being read");
+            }
+            buf.flip();
+            return new Table(buf);
+        }
+    }
+
+    private static void putString(ByteBuffer records, ByteArrayOutputStream heap, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        records.putInt(heap.size()).putInt(bytes.length);
+        heap.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Read-only view over a snapshot read into memory.
+     */
+    static final class Table {
+        private final ByteBuffer buf;
+        private final int count;
+        private final int heapStart;
+
+        private Table(ByteBuffer buf) throws IOException {
+            this.buf = buf;
+            int version = buf.limit() < HEADER_BYTES ? 0 : buf.getInt(4);
+            if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC
+                    || (version != VERSION && version != UNCHECKED_VERSION)) {
+                throw new IOException("Not a binary task snapshot");
+            }
+            if (version == VERSION) {
+                CRC32 crc = new CRC32();
+                crc.update(buf.duplicate().position(HEADER_BYTES));
+                if ((int) crc.getValue() != buf.getInt(12)) throw new IOException("Binary snapshot failed its checksum");
+            }
+            this.count = buf.getInt(8);
+            long heap = HEADER_BYTES + (long) RECORD_BYTES * count;
+            if (count < 0 || heap > buf.limit()) throw new IOException("Truncated record table");
+            this.heapStart = (int) heap;
+            for (int row = 0; row < count; row++) {
+                int at = HEADER_BYTES + row * RECORD_BYTES;
+                byte type = buf.get(at);
+                if (type != 'T' && type != 'D' && type != 'E') throw new IOException("Bad record " + row);
+                for (int field = at + 8; field < at + RECORD_BYTES; field += 8) {
+                    long end = (long) heapStart + buf.getInt(field) + buf.getInt(field + 4);
+                    if (buf.getInt(field) < 0 || buf.getInt(field + 4) < 0 || end > buf.limit()) {
+                        throw new IOException("Bad string reference in record " + row);
+                    }
+                }
+            }
+        }
+
+        int size() { return count; }
+
+        /**
+         * Decodes the task stored at {@code row}.
+         */
+        Task task(int row) {
+            int at = HEADER_BYTES + row * RECORD_BYTES;
+            byte type = buf.get(at);
+            int flags = buf.get(at + 1);
+            String desc = string(at + 8);
+            Task t;
+            if (type == 'T') {
+                t = new ToDo(desc);
+            } else if (type == 'D') {
+                t = (flags & FLAG_DATED) != 0
+                        ? new Deadline(desc, LocalDate.ofEpochDay(buf.getInt(at + 4)))
+                        : new Deadline(desc, string(at + 16));
+            } else {
+                t = new Event(desc, string(at + 16), string(at + 24));
+            }
+            if ((flags & FLAG_DONE) != 0) t.mark();
+            return t;
+        }
+
+        /**
+         * Returns whether the task at {@code row} may be an unfinished deadline with a parsed
+         * date or an unfinished event, from its record alone.
+         */
+        boolean mayBeDated(int row) {
+            int at = HEADER_BYTES + row * RECORD_BYTES;
+            byte type = buf.get(at);
+            int flags = buf.get(at + 1);
+            if ((flags & FLAG_DONE) != 0) return false;
+            return type == 'E' || (type == 'D' && (flags & FLAG_DATED) != 0);
+        }
+
+        private String string(int field) {
+            int len = buf.getInt(field + 4);
+            byte[] bytes = new byte[len];
+            buf.get(heapStart + buf.getInt(field), bytes, 0, len);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
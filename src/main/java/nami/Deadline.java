@@ -8,6 +8,8 @@ import java.time.format.DateTimeFormatter;
  * and a raw string so legacy save files remain readable.
  */
 public class Deadline extends Task {
+    private static final DateTimeFormatter SHOWN = DateTimeFormatter.ofPattern("MMM d yyyy");
+
     private final LocalDate byDate;   // preferred in Level-8
     private final String byRaw;       // fallback for legacy data (pre-Level-8)
 
@@ -30,7 +32,7 @@ public class Deadline extends Task {
     public Deadline(String description, String byRaw) {
         super(description);
         this.byDate = null;
-        this.byRaw = byRaw == null ? "" : byRaw;
+        this.byRaw = byRaw == null ? "" : StringPool.SHARED.intern(byRaw);
     }
 
     /**
@@ -41,6 +43,13 @@ public class Deadline extends Task {
         return byDate != null ? byDate.toString() : byRaw;
     }
 
+    /**
+     * Returns the parsed due date, or {@code null} for legacy raw deadlines.
+     */
+    public LocalDate getByDate() {
+        return byDate;
+    }
+
     /**
      * Legacy accessor retained for compatibility with older code paths that expect it here.
      */
@@ -48,9 +57,9 @@ public class Deadline extends Task {
     public String getDescription() { return description; }
 
     @Override
-    public String toString() {
+    protected String render() {
         String shown = (byDate != null)
-                ? byDate.format(DateTimeFormatter.ofPattern("MMM d yyyy"))
+                ? byDate.format(SHOWN)
                 : byRaw;
         return "[D][" + getStatusIcon() + "] " + description + " (by: " + shown + ")";
     }
@@ -0,0 +1,99 @@
+package nami;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+/**
+ * Deadlines ordered by due date (epoch day), backing {@link TaskList#dueBetween} and
+ * {@link TaskList#nextDue}. Deadlines on the same day are kept by task id, which is list
+ * order even for a task put back by undo. Unfinished deadlines are also kept apart, so
+ * {@link #next} never walks past finished ones. Legacy deadlines without a parsed date cannot
+ * be ordered and are only counted.
+ */
+class DueIndex {
+    private final TreeMap<Long, TreeMap<Long, Task>> byDay = new TreeMap<>();
+    private final TreeMap<Long, TreeMap<Long, Task>> openByDay = new TreeMap<>();
+    private final Set<Task> undated = new HashSet<>();
+
+    void add(long id, Task t) {
+        if (!(t instanceof Deadline)) return;
+        LocalDate date = ((Deadline) t).getByDate();
+        if (date == null) {
+            undated.add(t);
+            return;
+        }
+        put(byDay, date.toEpochDay(), id, t);
+        if (!t.isDone()) put(openByDay, date.toEpochDay(), id, t);
+    }
+
+    /** Records that {@code t}, which has the given id, was marked or unmarked. */
+    void setDone(long id, Task t, boolean done) {
+        if (!(t instanceof Deadline)) return;
+        LocalDate date = ((Deadline) t).getByDate();
+        if (date == null) return;
+        if (done) {
+            drop(openByDay, date.toEpochDay(), id);
+        } else {
+            put(openByDay, date.toEpochDay(), id, t);
+        }
+    }
+
+    /** Removes {@code t}, which had the given id. */
+    void remove(long id, Task t) {
+        if (!(t instanceof Deadline)) return;
+        LocalDate date = ((Deadline) t).getByDate();
+        if (date == null) {
+            undated.remove(t);
+            return;
+        }
+        drop(byDay, date.toEpochDay(), id);
+        drop(openByDay, date.toEpochDay(), id);
+    }
+
+    /**
+     * Returns deadlines due between two dates, inclusive, ordered by date.
+     *
+     * @param from First day, or {@code null} for no lower bound.
+     * @param to   Last day, or {@code null} for no upper bound.
+     */
+    List<Task> between(LocalDate from, LocalDate to) {
+        NavigableMap<Long, TreeMap<Long, Task>> range = byDay;
+        if (from != null) range = range.tailMap(from.toEpochDay(), true);
+        if (to != null) range = range.headMap(to.toEpochDay(), true);
+        List<Task> out = new ArrayList<>();
+        for (Map<Long, Task> day : range.values()) {
+            out.addAll(day.values());
+        }
+        return out;
+    }
+
+    /**
+     * Returns up to {@code limit} unfinished deadlines due on or after {@code from}, soonest first.
+     */
+    List<Task> next(LocalDate from, int limit) {
+        List<Task> out = new ArrayList<>();
+        for (Map<Long, Task> day : openByDay.tailMap(from.toEpochDay(), true).values()) {
+            for (Task t : day.values()) {
+                if (out.size() == limit) return out;
+                out.add(t);
+            }
+        }
+        return out;
+    }
+
+    int undatedCount() { return undated.size(); }
+
+    private static void put(TreeMap<Long, TreeMap<Long, Task>> days, long day, long id, Task t) {
+        days.computeIfAbsent(day, k -> new TreeMap<>()).put(id, t);
+    }
+
+    private static void drop(TreeMap<Long, TreeMap<Long, Task>> days, long day, long id) {
+        Map<Long, Task> tasks = days.get(day);
+        if (tasks != null && tasks.remove(id) != null && tasks.isEmpty()) days.remove(day);
+    }
+}
@@ -1,11 +1,21 @@
 package nami;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
 /**
  * Task that spans a time range with free-form {@code from}/{@code to} fields.
+ * When both fields are written as {@code yyyy-MM-dd HH:mm} (or a bare date, or a bare
+ * {@code HH:mm} end on the start's day) the range is also kept as date-times, which
+ * {@code on} and {@code overlaps} search; other events keep only their text.
  */
 public class Event extends Task {
     private final String from;
     private final String to;
+    private final LocalDateTime start; // null for a free-form event
+    private final LocalDateTime end;   // inclusive; null for a free-form event
 
     /**
      * Creates an event task covering a given time range.
@@ -16,8 +26,13 @@ public class Event extends Task {
      */
     public Event(String description, String from, String to) {
         super(description);
-        this.from = from;
-        this.to = to;
+        this.from = StringPool.SHARED.intern(from);
+        this.to = StringPool.SHARED.intern(to);
+        LocalDateTime parsedStart = parseStart(from);
+        LocalDateTime parsedEnd = parsedStart == null ? null : parseEnd(to, parsedStart);
+        boolean structured = parsedEnd != null && !parsedEnd.isBefore(parsedStart);
+        this.start = structured ? parsedStart : null;
+        this.end = structured ? parsedEnd : null;
     }
 
     public String getFrom() {
@@ -28,8 +43,91 @@ public class Event extends Task {
         return to;
     }
 
+    /** Returns the parsed start, or {@code null} if the event times are free-form. */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    /** Returns the parsed end (inclusive), or {@code null} if the event times are free-form. */
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    /**
+     * Reads a start written as {@code yyyy-MM-dd HH:mm}, {@code yyyy-MM-ddTHH:mm} or
+     * {@code yyyy-MM-dd} (the start of that day).
+     *
+     * @return The start, or {@code null} if {@code text} is not in one of those forms.
+     */
+    static LocalDateTime parseStart(String text) {
+        if (text == null || text.length() < 10 || !isDigit(text.charAt(0))) return null;
+        LocalDate date = date(text);
+        if (date == null) return null;
+        if (text.length() == 10) return date.atStartOfDay();
+        LocalTime time = time(text, 11);
+        return time == null ? null : date.atTime(time);
+    }
+
+    /**
+     * Reads an end in the forms {@link #parseStart} accepts, where a bare date means the
+     * last second of that day, or as {@code HH:mm} on the day of {@code start}.
+     *
+     * @return The end, or {@code null} if {@code text} is not in one of those forms.
+     */
+    static LocalDateTime parseEnd(String text, LocalDateTime start) {
+        if (text == null || text.isEmpty() || !isDigit(text.charAt(0))) return null;
+        if (text.length() == 5) {
+            LocalTime time = time(text, 0);
+            return time == null ? null : start.toLocalDate().atTime(time);
+        }
+        if (text.length() == 10) {
+            LocalDate date = date(text);
+            return date == null ? null : date.atTime(LocalTime.MAX.withNano(0));
+        }
+        return parseStart(text);
+    }
+
+    /** Parses {@code yyyy-MM-dd} at the start of {@code text}, followed by nothing, a space or 'T'. */
+    private static LocalDate date(String text) {
+        if (text.length() > 10 && text.charAt(10) != ' ' && text.charAt(10) != 'T') return null;
+        if (text.charAt(4) != '-' || text.charAt(7) != '-') return null;
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 0 || day < 0) return null;
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /** Parses exactly {@code HH:mm} from {@code at} to the end of {@code text}. */
+    private static LocalTime time(String text, int at) {
+        if (text.length() != at + 5 || text.charAt(at + 2) != ':') return null;
+        int hour = digits(text, at, at + 2);
+        int minute = digits(text, at + 3, at + 5);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) return null;
+        return LocalTime.of(hour, minute);
+    }
+
+    /** Returns the number spelled by {@code s[from, to)}, or -1 if it is not all digits. */
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
     @Override
-    public String toString() {
+    protected String render() {
         return "[E][" + getStatusIcon() + "] " + description + " (from: " + from + " to: " + to + ")";
     }
 }
@@ -0,0 +1,185 @@
+package nami;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * Words of lower-cased task descriptions in a BK-tree, backing {@code find --fuzzy}. Every
+ * distinct word is one node, with the ids of the tasks using it; a child sits under the
+ * edit distance between it and its parent, so a search for words within distance d of a
+ * query only visits children whose distance is within d of the query's distance to the
+ * parent. The tree covers the vocabulary, which grows far more slowly than the list.
+ * <p>
+ * Like {@link KeywordIndex}, removing a task leaves its ids in place to be skipped when they
+ * no longer resolve, and {@link #isStale()} says when a rebuild is due.
+ */
+class FuzzyIndex {
+    private static final int MIN_STALE = 1024;
+
+    private final Map<String, Word> words = new HashMap<>();
+    private Word root;
+    private int indexed;
+    private int removed;
+
+    /** One distinct word: the sorted ids of tasks containing it, and its children by distance. */
+    static final class Word {
+        final String text;
+        long[] ids = new long[1];
+        int size;
+        private Word[] children; // indexed by edit distance to this word; null until the first child
+
+        Word(String text) {
+            this.text = text;
+        }
+
+        private void append(long id) {
+            if (size > 0 && ids[size - 1] == id) return; // word repeats within one task
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            ids[size++] = id;
+        }
+
+        /** Adds {@code id} in order, returning whether it was not there yet. */
+        private boolean insert(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+            return true;
+        }
+    }
+
+    /** A word within the requested distance of a query word. */
+    static final class Hit {
+        final Word word;
+        final int distance;
+
+        Hit(Word word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+
+    /** Indexes {@code t}; ids must be added in increasing order. */
+    void add(long id, Task t) {
+        for (String w : words(t.getDescription())) {
+            word(w).append(id);
+        }
+        indexed++;
+    }
+
+    /** Indexes a task put back under an older id, as {@link KeywordIndex#restore} does. */
+    void restore(long id, Task t) {
+        boolean wasIndexed = true;
+        for (String w : words(t.getDescription())) {
+            if (word(w).insert(id)) wasIndexed = false;
+        }
+        if (wasIndexed && removed > 0) {
+            removed--;
+        } else {
+            indexed++;
+        }
+    }
+
+    /** Records that an indexed task was removed; its ids stay in the postings. */
+    void noteRemoved() {
+        removed++;
+    }
+
+    /** Returns whether removed tasks make up most of the index, so it should be rebuilt. */
+    boolean isStale() {
+        return removed >= MIN_STALE && removed * 2 >= indexed;
+    }
+
+    int wordCount() { return words.size(); }
+
+    /** Returns the indexed words within {@code maxDistance} edits of {@code query}. */
+    List<Hit> near(String query, int maxDistance) {
+        List<Hit> hits = new ArrayList<>();
+        if (root == null) return hits;
+        List<Word> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Word w = pending.remove(pending.size() - 1);
+            int d = distance(query, w.text);
+            if (d <= maxDistance) hits.add(new Hit(w, d));
+            if (w.children == null) continue;
+            int from = Math.max(1, d - maxDistance);
+            int to = Math.min(w.children.length - 1, d + maxDistance);
+            for (int i = from; i <= to; i++) {
+                if (w.children[i] != null) pending.add(w.children[i]);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Splits {@code text} into lower-cased words of letters and digits, two or more long.
+     */
+    static List<String> words(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) start = i;
+            if (!inWord && start >= 0) {
+                if (i - start >= 2) out.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    /** Returns the node for {@code text}, adding it to the tree if it is new. */
+    private Word word(String text) {
+        Word known = words.get(text);
+        if (known != null) return known;
+        Word fresh = new Word(text);
+        words.put(text, fresh);
+        if (root == null) {
+            root = fresh;
+            return fresh;
+        }
+        Word at = root;
+        while (true) {
+            int d = distance(text, at.text);
+            if (at.children == null) at.children = new Word[d + 1];
+            if (d >= at.children.length) at.children = Arrays.copyOf(at.children, d + 1);
+            if (at.children[d] == null) {
+                at.children[d] = fresh;
+                return fresh;
+            }
+            at = at.children[d];
+        }
+    }
+
+    /** Levenshtein distance between {@code a} and {@code b}, using two rows. */
+    static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitute = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
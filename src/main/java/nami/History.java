@@ -0,0 +1,106 @@
+package nami;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Predicate;
+/**
+ * Recent changes of one session for {@code undo} and {@code redo}, newest first; each
+ * session undoes only its own changes. Each step keeps only what
+ * is needed to reverse it: the ids of the tasks it touched and, for adds and deletes, the
+ * tasks themselves. Ids rather than positions keep a step valid while other changes shift
+ * the list, and let a deleted task go back where it was ({@link TaskList#restore}).
+ * <p>
+ * At most {@link #MAX_STEPS} steps, holding at most {@link #MAX_TASKS} tasks between them,
+ * are kept; the oldest are dropped first, but the newest step is always kept. Not
+ * synchronised: callers hold the same lock they change the list under.
+ */
+final class History {
+    static final int MAX_STEPS = 100;
+    static final int MAX_TASKS = 100_000;
+
+    /** What a step did, so undo knows what to reverse. */
+    enum Kind {
+        ADD("add"), DELETE("delete"), MARK("mark"), UNMARK("unmark");
+
+        final String word;
+
+        Kind(String word) {
+            this.word = word;
+        }
+    }
+
+    /** One change: the tasks it touched, by id in ascending (list) order. */
+    static final class Step {
+        final Kind kind;
+        final long[] ids;
+        final Task[] tasks; // added or deleted tasks, or null for mark/unmark
+
+        Step(Kind kind, long[] ids, Task[] tasks) {
+            this.kind = kind;
+            this.ids = ids;
+            this.tasks = tasks;
+        }
+
+        int held() { return tasks == null ? 0 : tasks.length; }
+    }
+
+    private final Deque<Step> undo = new ArrayDeque<>();
+    private final Deque<Step> redo = new ArrayDeque<>();
+    private int held; // tasks held by the steps in undo
+
+    /** Records a new change, which also forgets anything that could be redone. */
+    void record(Step step) {
+        redo.clear();
+        push(step);
+    }
+
+    /**
+     * Returns the newest change that {@code applies} accepts and moves it to the redo side,
+     * or {@code null} if there is none. Newer changes it rejects are dropped: another session
+     * may have removed or put back every task they touched.
+     */
+    Step undo(Predicate<Step> applies) {
+        Step step;
+        while ((step = undo.poll()) != null) {
+            held -= step.held();
+            if (applies.test(step)) {
+                redo.push(step);
+                return step;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the newest undone change that {@code applies} accepts and moves it back, or
+     * {@code null} if there is none. Newer undone changes it rejects are dropped.
+     */
+    Step redo(Predicate<Step> applies) {
+        Step step;
+        while ((step = redo.poll()) != null) {
+            if (applies.test(step)) {
+                push(step);
+                return step;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets every change. Used when tasks leave the list outside the history, as with
+     * {@code archive}, so no step can refer to a task that is gone.
+     */
+    void clear() {
+        undo.clear();
+        redo.clear();
+        held = 0;
+    }
+
+    private void push(Step step) {
+        undo.push(step);
+        held += step.held();
+        while (undo.size() > 1 && (undo.size() > MAX_STEPS || held > MAX_TASKS)) {
+            held -= undo.removeLast().held();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package nami;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+/**
+ * Events with parsed times, backing {@link TaskList#eventsBetween}. A treap ordered by
+ * start (then task id) where every node also knows the latest end in its subtree, so an
+ * overlap query skips whole subtrees that end too early or start too late. Events with
+ * free-form times cannot be placed and are only counted.
+ * <p>
+ * Nodes hold task ids from {@link TaskSlots} rather than tasks, so the index works the same
+ * for columnar lists, whose tasks are throwaway views.
+ */
+class IntervalIndex {
+    private Node root;
+    private int size;
+    private int unstructured;
+
+    private static final class Node {
+        final long start;   // epoch seconds, UTC as a plain timeline
+        final long end;     // inclusive
+        final long id;
+        final int priority; // heap order, derived from the id so rebuilds give the same shape
+        long maxEnd;
+        Node left;
+        Node right;
+
+        Node(long start, long end, long id) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.priority = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+            this.maxEnd = end;
+        }
+    }
+
+    void add(long id, Task t) {
+        if (!(t instanceof Event)) return;
+        Event e = (Event) t;
+        if (e.getStart() == null) {
+            unstructured++;
+            return;
+        }
+        root = insert(root, new Node(seconds(e.getStart()), seconds(e.getEnd()), id));
+        size++;
+    }
+
+    /** Removes {@code t}, which had the given id. */
+    void remove(long id, Task t) {
+        if (!(t instanceof Event)) return;
+        Event e = (Event) t;
+        if (e.getStart() == null) {
+            unstructured--;
+            return;
+        }
+        root = delete(root, seconds(e.getStart()), id);
+        size--;
+    }
+
+    /**
+     * Returns the ids of events overlapping {@code [from, to]}, both ends inclusive, ordered
+     * by start and then id.
+     */
+    long[] overlapping(LocalDateTime from, LocalDateTime to) {
+        long[][] out = { new long[16] };
+        int count = collect(root, seconds(from), seconds(to), out, 0);
+        return Arrays.copyOf(out[0], count);
+    }
+
+    int size() { return size; }
+
+    int unstructuredCount() { return unstructured; }
+
+    static long seconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /** Appends matching ids under {@code n} to {@code out[0]} from {@code count}; returns the new count. */
+    private static int collect(Node n, long from, long to, long[][] out, int count) {
+        while (n != null && n.maxEnd >= from) {
+            count = collect(n.left, from, to, out, count);
+            if (n.start > to) break; // so does everything to the right
+            if (n.end >= from) {
+                if (count == out[0].length) out[0] = Arrays.copyOf(out[0], count * 2);
+                out[0][count++] = n.id;
+            }
+            n = n.right;
+        }
+        return count;
+    }
+
+    private static Node insert(Node n, Node x) {
+        if (n == null) return x;
+        if (before(x.start, x.id, n)) {
+            n.left = insert(n.left, x);
+            if (n.left.priority > n.priority) n = rotateRight(n);
+        } else {
+            n.right = insert(n.right, x);
+            if (n.right.priority > n.priority) n = rotateLeft(n);
+        }
+        update(n);
+        return n;
+    }
+
+    private static Node delete(Node n, long start, long id) {
+        if (n == null) return null;
+        if (n.start == start && n.id == id) return merge(n.left, n.right);
+        if (before(start, id, n)) {
+            n.left = delete(n.left, start, id);
+        } else {
+            n.right = delete(n.right, start, id);
+        }
+        update(n);
+        return n;
+    }
+
+    /** Joins two treaps where every key in {@code a} sorts before every key in {@code b}. */
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static boolean before(long start, long id, Node n) {
+        return start < n.start || (start == n.start && id < n.id);
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static void update(Node n) {
+        long max = n.end;
+        if (n.left != null && n.left.maxEnd > max) max = n.left.maxEnd;
+        if (n.right != null && n.right.maxEnd > max) max = n.right.maxEnd;
+        n.maxEnd = max;
+    }
+}
@@ -0,0 +1,126 @@
+package nami;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+/**
+ * Trigram index over lower-cased task descriptions, backing {@link TaskList#findByKeyword}.
+ * Postings are task ids from {@link TaskSlots}. Ids are handed out in list order, so each
+ * posting list is sorted just by appending.
+ * <p>
+ * Removing a task does not touch the postings; the stale ids simply no longer resolve.
+ * {@link #isStale()} tells the owner when enough have built up that a rebuild is cheaper
+ * than carrying them.
+ */
+class KeywordIndex {
+    static final int GRAM = 3;
+
+    // Rough per-entry costs on a 64-bit JVM with compressed oops, used for reporting only.
+    private static final int BYTES_PER_GRAM = 88;
+    private static final int BYTES_PER_POSTING = 8;
+    private static final int MIN_STALE = 1024;
+
+    static final Postings NONE = new Postings();
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private long postingCount;
+    private int indexed;
+    private int removed;
+
+    /** Sorted task ids sharing one trigram. */
+    static final class Postings {
+        long[] ids = new long[2];
+        int size;
+
+        private boolean append(long id) {
+            if (size > 0 && ids[size - 1] == id) return false; // gram repeats within one task
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            ids[size++] = id;
+            return true;
+        }
+
+        /** Adds {@code id} at its sorted place unless it is already there. */
+        private boolean insert(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+            return true;
+        }
+    }
+
+    /** Indexes {@code t}; ids must be added in increasing order. */
+    void add(long id, Task t) {
+        String text = t.getDescription().toLowerCase();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            if (postings.computeIfAbsent(key(text, i), k -> new Postings()).append(id)) {
+                postingCount++;
+            }
+        }
+        indexed++;
+    }
+
+    /**
+     * Indexes a task put back under an older id. If it was removed after the index was
+     * built, its postings are still there and it stops counting as removed.
+     */
+    void restore(long id, Task t) {
+        String text = t.getDescription().toLowerCase();
+        boolean wasIndexed = true;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            if (postings.computeIfAbsent(key(text, i), k -> new Postings()).insert(id)) {
+                postingCount++;
+                wasIndexed = false;
+            }
+        }
+        if (wasIndexed && removed > 0) {
+            removed--;
+        } else {
+            indexed++;
+        }
+    }
+
+    /** Records that an indexed task was removed; its ids stay in the postings. */
+    void noteRemoved() {
+        removed++;
+    }
+
+    /** Returns whether removed tasks make up most of the index, so it should be rebuilt. */
+    boolean isStale() {
+        return removed >= MIN_STALE && removed * 2 >= indexed;
+    }
+
+    /**
+     * Returns ids of tasks that contain every trigram of the lower-cased needle, in list order.
+     * Some may belong to removed tasks, and callers must still verify the full phrase.
+     *
+     * @return Candidate ids, or {@code null} when the needle is too short to be indexed.
+     */
+    Postings candidates(String needle) {
+        if (needle.length() < GRAM) return null;
+        Postings best = null;
+        for (int i = 0; i + GRAM <= needle.length(); i++) {
+            Postings list = postings.get(key(needle, i));
+            if (list == null) return NONE;
+            if (best == null || list.size < best.size) best = list;
+        }
+        return best;
+    }
+
+    /**
+     * Summarises the index size and its approximate heap overhead.
+     */
+    String describe() {
+        long bytes = postings.size() * (long) BYTES_PER_GRAM + postingCount * BYTES_PER_POSTING;
+        return postings.size() + " trigrams, " + postingCount + " postings, " + removed
+                + " removed tasks pending rebuild (~" + (bytes / 1024) + " KB)";
+    }
+
+    /** Packs three UTF-16 chars into one key so no substring is allocated per gram. */
+    private static Long key(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
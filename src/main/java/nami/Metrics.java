@@ -0,0 +1,199 @@
+package nami;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+/**
+ * Counters and latency histograms for commands and storage, shown by the {@code stats}
+ * command and optionally dumped to a file. Recording is lock-free and allocation-free, so
+ * it can stay on for every command, including concurrent server sessions.
+ */
+final class Metrics {
+    final Histogram journalWrites = new Histogram();
+    final Histogram snapshotWrites = new Histogram();
+    final Histogram fsyncs = new Histogram();
+    final AtomicLong journalBytes = new AtomicLong();
+    final AtomicLong snapshotBytes = new AtomicLong();
+    /** Time callers spent inside storage calls, which commands report as their storage share. */
+    final AtomicLong storageNanos = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    /** Shard files written and reused as they were, when snapshots are sharded. */
+    final AtomicLong shardsWritten = new AtomicLong();
+    final AtomicLong shardsKept = new AtomicLong();
+    volatile long loadNanos = -1;
+    volatile int loadedTasks;
+
+    private final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+    private Path dumpTarget;
+    private Supplier<List<String>> dumpReport;
+
+    /**
+     * Latency distribution in nanoseconds, bucketed HdrHistogram-style: exact below 16 ns,
+     * then 16 linear sub-buckets per power of two, so any recorded value is reported within
+     * about 6%. The buckets are allocated up front and recording never allocates.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(v));
+            count.incrementAndGet();
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        long count() { return count.get(); }
+
+        long max() { return max.get(); }
+
+        /**
+         * Returns the highest value of the bucket holding the {@code q}-th quantile, or 0 when empty.
+         */
+        long percentile(double q) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target) return Math.min(highest(i), max.get());
+            }
+            return max.get();
+        }
+
+        private static int bucket(long v) {
+            if (v < SUB_COUNT) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        private static long highest(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+            long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << (exp - SUB_BITS);
+            return lowest + (1L << (exp - SUB_BITS)) - 1;
+        }
+
+        /** Formats as {@code n, p50 x, p99 y, max z}, or {@code none}. */
+        @Override
+        public String toString() {
+            if (count() == 0) return "none";
+            return count() + ", p50 " + duration(percentile(0.5)) + ", p99 " + duration(percentile(0.99))
+                    + ", max " + duration(max());
+        }
+    }
+
+    /** Parse, run and storage time of one command word. */
+    static final class CommandStats {
+        final Histogram parse = new Histogram();
+        final Histogram run = new Histogram();
+        final Histogram storage = new Histogram();
+
+        void record(long parseNanos, long runNanos, long storageNanos) {
+            parse.record(parseNanos);
+            run.record(runNanos);
+            storage.record(storageNanos);
+        }
+    }
+
+    CommandStats command(String name) {
+        CommandStats stats = commands.get(name);
+        return stats != null ? stats : commands.computeIfAbsent(name, k -> new CommandStats());
+    }
+
+    /**
+     * Formats everything measured so far, one line each.
+     *
+     * @param taskSummary Current task counts, computed by the caller under its lock.
+     * @param indexSummary Keyword index size.
+     */
+    List<String> report(String taskSummary, String indexSummary) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Tasks: " + taskSummary);
+        if (loadNanos >= 0) lines.add("Loaded " + loadedTasks + " tasks in " + duration(loadNanos));
+        lines.add("Commands (count: parse p50, run p50 / p99 / max, storage p50):");
+        for (Map.Entry<String, CommandStats> e : new TreeMap<>(commands).entrySet()) {
+            CommandStats c = e.getValue();
+            lines.add(String.format(Locale.ROOT, "  %-8s %d: %s, %s / %s / %s, %s", e.getKey(), c.run.count(),
+                    duration(c.parse.percentile(0.5)), duration(c.run.percentile(0.5)),
+                    duration(c.run.percentile(0.99)), duration(c.run.max()), duration(c.storage.percentile(0.5))));
+        }
+        lines.add("Rejected input: " + rejected.get());
+        lines.add("Journal writes: " + journalWrites + "; " + bytes(journalBytes.get()) + " written");
+        lines.add("Snapshot writes: " + snapshotWrites + "; " + bytes(snapshotBytes.get()) + " written");
+        lines.add("Fsyncs: " + fsyncs);
+        if (shardsWritten.get() + shardsKept.get() > 0) {
+            lines.add("Shards: " + shardsWritten.get() + " written, " + shardsKept.get() + " unchanged");
+        }
+        lines.add("Keyword index: " + indexSummary);
+        lines.add("String pool: " + StringPool.SHARED.describe());
+        return lines;
+    }
+
+    /**
+     * Rewrites {@code file} with {@code report} every {@code seconds} on a daemon thread,
+     * replacing it in one rename so readers never see a partial dump.
+     */
+    void dumpEvery(Path file, long seconds, Supplier<List<String>> report) {
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nami-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumpTarget = file;
+        dumpReport = report;
+        dumper.scheduleAtFixedRate(() -> dump(file, report), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /** Stops periodic dumping and writes one last dump. */
+    void stopDumping() {
+        if (dumper == null) return;
+        dumper.shutdownNow();
+        dump(dumpTarget, dumpReport);
+    }
+
+    private static void dump(Path file, Supplier<List<String>> report) {
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, report.get(), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // a missed dump is replaced by the next one; metrics must never stop the app
+        }
+    }
+
+    static String duration(long nanos) {
+        if (nanos < 1_000) return nanos + " ns";
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+    }
+
+    static String bytes(long n) {
+        if (n < 1024) return n + " B";
+        if (n < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", n / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MB", n / (1024.0 * 1024));
+    }
+}
@@ -1,110 +1,764 @@
 package nami;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 /**
  * Entry point and main loop for the Nami chatbot.
  * Coordinates UI, storage, and in-memory task list.
  */
 
 public class Nami {
+    private static final int BATCH_CHECKPOINT = 1000;
+    private static final int SERVER_FLUSH_MILLIS = 50;
+    private static final long STATS_DUMP_SECONDS = 60;
+    /** Saves at least this large are loaded in the background so the prompt appears at once. */
+    private static final long BACKGROUND_LOAD_BYTES = 1 << 20;
+
     private final Storage storage;
-    private final TaskList tasks;
+    private final CompletableFuture<TaskList> loading = new CompletableFuture<>();
+    private final List<Task> earlyAdds = new ArrayList<>(); // added before loading finished
+    private final List<History> earlyAddedBy = new ArrayList<>(); // the session history of each
+    private volatile TaskList tasks;  // null until loading finishes and earlyAdds are applied
+    private volatile NamiException loadError;
     private final Ui ui;
+    private final Metrics metrics = new Metrics();
+    // Each session undoes only its own changes; archive clears them all. Guarded by the write lock.
+    private final Set<History> histories = new HashSet<>();
+    private final Clock clock; // today for reminders and due queries
+    private final Reminders reminders; // null when switched off
+    private final int archiveAfter; // done tasks allowed before archiving them, or -1 for never
+    private long doneBound = Integer.MAX_VALUE; // at least the done count; unknown until first counted
+    // Commands that only read (list, find) share the read lock; everything else is exclusive.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates a Nami app wired to data/nami.txt for persistence, or data/nami.bin when
+     * started with {@code -Dnami.format=binary}. {@code -Dnami.durability=ops:N|ms:T}
+     * switches saving to write-behind; see {@link Storage.Durability}.
+     * {@code -Dnami.stats=FILE} writes the {@code stats} report to FILE every minute,
+     * or every {@code -Dnami.stats.seconds}. {@code -Dnami.store=columns} keeps tasks in
+     * primitive columns rather than one object each; see {@link TaskColumns}.
+     * {@code -Dnami.shards=type|month} splits the text save into shard files; see {@link Shards}.
+     * {@code -Dnami.archive.done=N} archives the completed tasks whenever more than N are done.
+     * {@code -Dnami.reminders=off} turns off deadline and event reminders; see {@link Reminders}.
+     * <p>
+     * Large saves are loaded on a background thread: new tasks are accepted meanwhile and
+     * saved once loading finishes, and every other command waits for it.
+     *
+     * @throws NamiException if the saved tasks cannot be read.
+     */
+    public Nami() throws NamiException {
+        this(false);
+    }
 
     /**
-     * Creates a Nami app wired to data/nami.txt for persistence.
+     * Creates a Nami app, optionally in batch mode for piped scripts: output is flushed in
+     * chunks and saving defaults to a checkpoint every {@link #BATCH_CHECKPOINT} changes.
      */
-    public Nami() {
-        this.ui = new Ui();
-        this.storage = new Storage("data", "nami.txt");
-        this.tasks = new TaskList(storage.load());
+    public Nami(boolean batch) throws NamiException {
+        this(batch, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a Nami app that takes the current date and time from {@code clock}, for
+     * reminders and {@code due next}.
+     */
+    Nami(boolean batch, Clock clock) throws NamiException {
+        this(batch, batch ? "ops:" + BATCH_CHECKPOINT : "sync", clock);
+    }
+
+    private Nami(boolean batch, String defaultDurability, Clock clock) throws NamiException {
+        this.ui = new Ui(batch);
+        this.clock = clock;
+        boolean binary = "binary".equals(System.getProperty("nami.format"));
+        String durability = System.getProperty("nami.durability", defaultDurability);
+        boolean columnar = "columns".equals(System.getProperty("nami.store"));
+        Shards.Scheme shards = Shards.Scheme.parse(System.getProperty("nami.shards"));
+        this.archiveAfter = Integer.getInteger("nami.archive.done", -1);
+        this.reminders = "off".equals(System.getProperty("nami.reminders"))
+                ? null
+                : new Reminders(clock);
+        this.storage = new Storage("data", binary ? "nami.bin" : "nami.txt",
+                Storage.Durability.parse(durability), metrics, columnar, shards);
+        if (storage.savedBytes() < BACKGROUND_LOAD_BYTES) {
+            loading.complete(storage.load());
+            this.tasks = loading.join();
+            startReminders(tasks);
+        } else {
+            Thread loader = new Thread(() -> {
+                try {
+                    TaskList loaded = storage.load();
+                    startReminders(loaded); // here rather than under the lock sessions wait on
+                    loading.complete(loaded);
+                } catch (NamiException | RuntimeException e) {
+                    loading.completeExceptionally(e);
+                }
+            }, "nami-load");
+            loader.setDaemon(true);
+            loader.start();
+        }
+        String statsFile = System.getProperty("nami.stats");
+        if (statsFile != null) {
+            long seconds = Long.getLong("nami.stats.seconds", STATS_DUMP_SECONDS);
+            metrics.dumpEvery(Paths.get(statsFile), Math.max(1, seconds), this::lockedStats);
+        }
     }
 
     /**
      * Runs the blocking command loop until the user says {@code bye} or
      * {@link Ui#readCommand()} reaches EOF. Delegates parsing and persistence to
-     * {@link Parser}, {@link TaskList}, and {@link Storage} respectively.
+     * {@link Parser}, {@link TaskList}, and {@link Storage} respectively; each mutation
+     * is journaled rather than rewriting the whole save file.
      */
     public void run() {
+        try {
+            session(ui);
+        } finally {
+            try {
+                if (loadError == null) awaitLoad(); // a failed load was already reported
+                storage.close();
+            } catch (NamiException e) {
+                ui.showError(e.getMessage());
+            }
+            if (reminders != null) reminders.stop();
+            metrics.stopDumping();
+            ui.close();
+        }
+    }
+
+    /**
+     * Serves the shared task list to any number of local clients (e.g. {@code nc localhost PORT}),
+     * one thread per connection. Each connection behaves like an interactive session, and
+     * {@code bye} only ends that session. Runs until the process is stopped.
+     *
+     * @param port TCP port to listen on, bound to the loopback interface only.
+     */
+    public void serve(int port) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                awaitLoad();
+            } catch (NamiException e) {
+                System.err.println(e.getMessage());
+            }
+            try {
+                storage.close(); // also writes the held-back tasks a failed load journaled
+            } catch (NamiException e) {
+                System.err.println(e.getMessage());
+            }
+            if (reminders != null) reminders.stop();
+            metrics.stopDumping();
+        }));
+        ExecutorService sessions = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "nami-session");
+            t.setDaemon(true);
+            return t;
+        });
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            ui.showListening(server.getLocalPort());
+            ui.close();
+            while (true) {
+                Socket socket = server.accept();
+                sessions.execute(() -> {
+                    try (socket) {
+                        Ui remote = new Ui(socket.getInputStream(), socket.getOutputStream(), false);
+                        session(remote);
+                        remote.close();
+                    } catch (IOException ignored) { }
+                });
+            }
+        } catch (IOException e) {
+            ui.showError("Could not serve on port " + port + ": " + e.getMessage());
+            ui.close();
+        }
+    }
+
+    /**
+     * Reads and executes commands from one UI until {@code bye} or EOF.
+     */
+    private void session(Ui ui) {
+        History history = new History();
+        lock.writeLock().lock();
+        try {
+            histories.add(history);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            session(ui, history);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                histories.remove(history);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void session(Ui ui, History history) {
         ui.showWelcome();
+        boolean warned = warnLoad(ui, false);
+        long seen = remind(ui, 0);
         boolean exit = false;
         while (!exit) {
             String input = ui.readCommand();
             if (input == null) break;
+            long start = System.nanoTime();
+            Parser.Parsed p;
+            try {
+                p = Parser.parse(input);
+            } catch (NamiException e) {
+                metrics.rejected.incrementAndGet();
+                ui.showError(e.getMessage());
+                seen = remind(ui, seen);
+                continue;
+            }
             try {
-                Parser.Parsed p = Parser.parse(input);
+                exit = execute(p, ui, history, System.nanoTime() - start);
+            } catch (NamiException e) {
+                ui.showError(e.getMessage());
+                // Refuse to go on without the saved tasks rather than risk overwriting them.
+                if (loadError != null) break;
+            }
+            if (!exit) {
+                warned = warnLoad(ui, warned);
+                seen = remind(ui, seen);
+            }
+        }
+    }
 
-                switch (p.cmd) {
-                case "bye":
-                    exit = true;
-                    ui.showBye();
-                    break;
+    /**
+     * Tells the session, once, that the saved tasks had to be salvaged from a damaged save.
+     *
+     * @return Whether loading is over and the session was told if need be, to pass back next time.
+     */
+    private boolean warnLoad(Ui ui, boolean warned) {
+        if (warned || !loading.isDone()) return warned;
+        String warning = storage.loadWarning();
+        if (warning != null) ui.showError(warning);
+        return true;
+    }
 
-                case "list":
-                    ui.showList(tasks.asList());
-                    break;
+    /**
+     * Shows the reminders that fired after {@code seen}, naming each task as it is now;
+     * reminders for tasks since deleted or marked done are dropped. Shows none while loading.
+     *
+     * @return The last reminder shown, to pass back next time.
+     */
+    private long remind(Ui ui, long seen) {
+        if (reminders == null || tasks == null) return seen;
+        List<Reminders.Notice> fired = reminders.since(seen);
+        if (fired.isEmpty()) return seen;
+        List<String> lines = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Reminders.Notice n : fired) {
+                if (n.kind == Reminders.Kind.SUMMARY) {
+                    lines.add(n.text);
+                    continue;
+                }
+                Task t = tasks.byId(n.id);
+                if (t != null && !t.isDone()) lines.add(n.kind.label + t);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!lines.isEmpty()) ui.showReminders(lines);
+        return fired.get(fired.size() - 1).seq;
+    }
 
-                case "mark":
-                    ensureRange(p.index);
-                    Task markTarget = tasks.get(p.index - 1);
-                    if (markTarget.isDone()) {
-                        ui.showAlreadyMarked(markTarget);
-                    } else {
-                        markTarget.mark();
-                        storage.save(tasks.asList());
-                        ui.showMarked(markTarget);
-                    }
-                    break;
+    /**
+     * Registers the loaded tasks for reminders and starts the thread that fires them. Called
+     * before the list is shared, so tasks added later are registered as they are added.
+     */
+    private void startReminders(TaskList loaded) {
+        if (reminders == null) return;
+        loaded.remindWith(reminders);
+        reminders.start();
+    }
 
-                case "unmark":
-                    ensureRange(p.index);
-                    Task unmarkTarget = tasks.get(p.index - 1);
-                    if (!unmarkTarget.isDone()) {
-                        ui.showAlreadyUnmarked(unmarkTarget);
-                    } else {
-                        unmarkTarget.unmark();
-                        storage.save(tasks.asList());
-                        ui.showUnmarked(unmarkTarget);
-                    }
-                    break;
+    /**
+     * Applies one parsed command and renders its response to {@code ui}, recording how long
+     * it took and how much of that was spent in storage.
+     *
+     * @param history    The session's changes, for undo and redo.
+     * @param parseNanos Time taken to parse the command, recorded with it.
+     * @return Whether the session should end.
+     * @throws NamiException if the command refers to a task that does not exist.
+     */
+    private boolean execute(Parser.Parsed p, Ui ui, History history, long parseNanos) throws NamiException {
+        boolean adds = p.cmd.equals("todo") || p.cmd.equals("deadline") || p.cmd.equals("event");
+        // stats reports loading progress rather than waiting for it to finish.
+        boolean reportsLoading = p.cmd.equals("stats") && !loading.isDone();
+        // Adds are only held back while loading runs; after that they wait for it like the rest.
+        if ((!adds && !reportsLoading) || loading.isDone()) awaitLoad();
+        boolean readOnly = p.cmd.equals("list") || p.cmd.equals("find") || p.cmd.equals("due")
+                || p.cmd.equals("on") || p.cmd.equals("overlaps") || p.cmd.equals("stats")
+                || p.cmd.equals("archive find") || p.cmd.equals("bye");
+        Lock held = readOnly ? lock.readLock() : lock.writeLock();
+        held.lock();
+        // Writers hold the lock exclusively, so the storage time that passes meanwhile is theirs.
+        long start = System.nanoTime();
+        long storageStart = metrics.storageNanos.get();
+        String cmd = p.cmd;
+        try {
+            switch (p.cmd) {
+            case "bye":
+                ui.showBye();
+                return true;
+
+            case "list":
+                ui.showList(tasks.asList(), p.offset, p.limit);
+                break;
 
-                case "todo": {
-                    Task t = new ToDo(p.desc);
-                    tasks.add(t);
-                    storage.save(tasks.asList());
-                    ui.showAdded(t, tasks.size());
+            case "mark":
+                if (p.ranges != null) {
+                    setDone(select(p.ranges), true, history, ui);
                     break;
                 }
+                ensureRange(p.index);
+                if (tasks.isDone(p.index - 1)) {
+                    ui.showAlreadyMarked(tasks.get(p.index - 1));
+                } else {
+                    Task marked = tasks.setDone(p.index - 1, true);
+                    remember(history, History.Kind.MARK, tasks.idAt(p.index - 1), null);
+                    doneBound++;
+                    storage.logMark(p.index - 1, true);
+                    ui.showMarked(marked);
+                }
+                break;
 
-                case "deadline": {
-                    Task t = new Deadline(p.desc, p.dueDate);
-                    tasks.add(t);
-                    storage.save(tasks.asList());
-                    ui.showAdded(t, tasks.size());
+            case "unmark":
+                if (p.ranges != null) {
+                    setDone(select(p.ranges), false, history, ui);
                     break;
                 }
+                ensureRange(p.index);
+                if (!tasks.isDone(p.index - 1)) {
+                    ui.showAlreadyUnmarked(tasks.get(p.index - 1));
+                } else {
+                    Task unmarked = tasks.setDone(p.index - 1, false);
+                    remember(history, History.Kind.UNMARK, tasks.idAt(p.index - 1), null);
+                    storage.logMark(p.index - 1, false);
+                    ui.showUnmarked(unmarked);
+                }
+                break;
+
+            case "todo":
+                add(new ToDo(p.desc), history, ui);
+                break;
+
+            case "deadline":
+                add(new Deadline(p.desc, p.dueDate), history, ui);
+                break;
+
+            case "event":
+                add(new Event(p.desc, p.from, p.to), history, ui);
+                break;
 
-                case "event": {
-                    Task t = new Event(p.desc, p.from, p.to);
-                    tasks.add(t);
-                    storage.save(tasks.asList());
-                    ui.showAdded(t, tasks.size());
+            case "delete":
+                if (p.doneOnly || p.ranges != null) {
+                    deleteAll(p.doneOnly ? tasks.donePositions() : select(p.ranges), history, ui);
                     break;
                 }
+                ensureRange(p.index);
+                long id = tasks.idAt(p.index - 1);
+                Task removed = tasks.remove(p.index - 1);
+                remember(history, History.Kind.DELETE, id, removed);
+                storage.logDelete(p.index - 1);
+                ui.showDeleted(removed, tasks.size());
+                break;
 
-                case "delete":
-                    ensureRange(p.index);
-                    Task removed = tasks.remove(p.index - 1);
-                    storage.save(tasks.asList());
-                    ui.showDeleted(removed, tasks.size());
-                    break;
+            case "find":
+                if (p.fuzzy) {
+                    int ranked = (int) Math.min(Integer.MAX_VALUE, (long) p.offset + p.limit);
+                    ui.showFind(tasks.findFuzzy(p.keyword, p.type, p.done, ranked), p.offset, p.limit);
+                } else {
+                    ui.showFind(tasks.find(p.keyword, p.type, p.done), p.offset, p.limit);
+                }
+                break;
 
-                case "find":
-                    ui.showFind(tasks.findByKeyword(p.keyword));
-                    break;
+            case "due":
+                if (p.count > 0) {
+                    ui.showDue(tasks.nextDue(LocalDate.now(clock), p.count), tasks.undatedDeadlines());
+                } else {
+                    ui.showDue(tasks.dueBetween(p.dueFrom, p.dueTo), tasks.undatedDeadlines());
                 }
+                break;
+
+            case "on":
+            case "overlaps":
+                ui.showEvents(tasks.eventsBetween(p.start, p.end), tasks.unstructuredEvents());
+                break;
+
+            case "undo":
+            case "redo":
+                undo(p.cmd.equals("redo"), history, ui);
+                break;
+
+            case "archive":
+                archive(ui);
+                break;
+
+            case "archive find":
+                Archive.Matches found = storage.findArchived(new TaskFilter(p.keyword, p.type, p.done),
+                        p.offset, p.limit);
+                ui.showArchiveFind(found.page, p.offset, found.total, found.torn);
+                break;
+
+            case "stats":
+                ui.showStats(stats());
+                break;
+            }
+            if (!readOnly && tasks != null) {
+                archiveIfNeeded(ui);
+                storage.compactIfNeeded(tasks);
+            }
+            return false;
+        } finally {
+            metrics.command(cmd).record(parseNanos, System.nanoTime() - start,
+                    metrics.storageNanos.get() - storageStart);
+            held.unlock();
+        }
+    }
+
+    /**
+     * Builds the {@code stats} report; the caller holds the lock. While the saved tasks are
+     * still loading, it says so and counts the tasks added meanwhile instead.
+     */
+    private List<String> stats() {
+        if (tasks == null) {
+            return metrics.report("still loading (" + earlyAdds.size() + " added meanwhile)", "not built yet");
+        }
+        String summary = tasks.size() + " (" + tasks.countDone() + " done; " + tasks.countOfType('T') + " todo, "
+                + tasks.countOfType('D') + " deadline, " + tasks.countOfType('E') + " event)";
+        return metrics.report(summary, tasks.describeIndex());
+    }
+
+    private List<String> lockedStats() {
+        lock.readLock().lock();
+        try {
+            return stats();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds and journals {@code t}, or holds it back while the saved tasks are still loading:
+     * the journal cannot take records until loading has replayed it.
+     *
+     * @throws NamiException if loading failed.
+     */
+    private void add(Task t, History history, Ui ui) throws NamiException {
+        if (loadError != null) throw loadError;
+        if (tasks == null) {
+            earlyAdds.add(t);
+            earlyAddedBy.add(history);
+            ui.showAddedWhileLoading(t);
+            return;
+        }
+        tasks.add(t);
+        remember(history, History.Kind.ADD, tasks.idAt(tasks.size() - 1), t);
+        storage.logAdd(t);
+        ui.showAdded(t, tasks.size());
+    }
+
+    /**
+     * Waits for the saved tasks to finish loading, then appends and journals the tasks added
+     * meanwhile, in order. Returns at once after the first call.
+     *
+     * @throws NamiException if loading failed, or a held-back task could not be journaled.
+     */
+    private void awaitLoad() throws NamiException {
+        if (tasks != null) return;
+        if (loadError != null) throw loadError;
+        TaskList loaded;
+        try {
+            loaded = loading.join();
+        } catch (CompletionException e) {
+            String reason = e.getCause() instanceof NamiException
+                    ? e.getCause().getMessage()
+                    : "Could not load tasks: " + e.getCause();
+            lock.writeLock().lock();
+            try {
+                if (loadError == null) loadError = new NamiException(reason + journalEarlyAdds());
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw loadError;
+        }
+        lock.writeLock().lock();
+        try {
+            if (tasks != null) return;
+            NamiException failed = null;
+            for (int i = 0; i < earlyAdds.size(); i++) {
+                Task t = earlyAdds.get(i);
+                loaded.add(t);
+                remember(earlyAddedBy.get(i), History.Kind.ADD, loaded.idAt(loaded.size() - 1), t);
+                try {
+                    storage.logAdd(t);
+                } catch (NamiException e) {
+                    failed = e; // the record stays queued for the next write
+                }
+            }
+            earlyAdds.clear();
+            earlyAddedBy.clear();
+            tasks = loaded;
+            if (failed != null) throw failed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Journals the tasks held back while loading, after loading failed, so that they are
+     * appended once the save can be read again. Called under the write lock.
+     *
+     * @return A note for the load error saying what became of them.
+     */
+    private String journalEarlyAdds() {
+        if (earlyAdds.isEmpty()) return "";
+        NamiException failed = null;
+        for (Task t : earlyAdds) {
+            try {
+                storage.logAdd(t);
             } catch (NamiException e) {
-                ui.showError(e.getMessage());
+                failed = e; // the record stays queued for the next write
             }
         }
+        int count = earlyAdds.size();
+        earlyAdds.clear();
+        earlyAddedBy.clear();
+        String added = " (" + count + " task(s) added since starting ";
+        return failed == null
+                ? added + "were journaled, to be added once it loads.)"
+                : added + "are queued for the journal: " + failed.getMessage() + ")";
+    }
+
+    /**
+     * Marks or unmarks the tasks at the given positions and journals them as one record.
+     *
+     * @param positions Distinct 0-based positions in ascending order.
+     */
+    private void setDone(int[] positions, boolean done, History history, Ui ui) throws NamiException {
+        List<Task> changed = new ArrayList<>();
+        int[] changedPositions = new int[positions.length];
+        long[] changedIds = new long[positions.length];
+        for (int pos : positions) {
+            if (tasks.isDone(pos) == done) continue;
+            changedPositions[changed.size()] = pos;
+            changedIds[changed.size()] = tasks.idAt(pos);
+            changed.add(tasks.setDone(pos, done));
+        }
+        if (done) doneBound += changed.size();
+        if (!changed.isEmpty()) {
+            history.record(new History.Step(done ? History.Kind.MARK : History.Kind.UNMARK,
+                    Arrays.copyOf(changedIds, changed.size()), null));
+            storage.logMark(Arrays.copyOf(changedPositions, changed.size()), done);
+        }
+        ui.showMarkedAll(changed, positions.length - changed.size(), done);
+    }
+
+    /**
+     * Removes the tasks at the given positions, highest first so earlier positions stay
+     * valid, and journals them as one record.
+     *
+     * @param positions Distinct 0-based positions in ascending order.
+     */
+    private void deleteAll(int[] positions, History history, Ui ui) throws NamiException {
+        Task[] removed = new Task[positions.length];
+        long[] ids = new long[positions.length];
+        for (int i = positions.length - 1; i >= 0; i--) {
+            ids[i] = tasks.idAt(positions[i]);
+            removed[i] = tasks.remove(positions[i]);
+        }
+        if (positions.length > 0) {
+            history.record(new History.Step(History.Kind.DELETE, ids, removed));
+            storage.logDelete(positions);
+        }
+        ui.showDeletedAll(Arrays.asList(removed), tasks.size());
+    }
+
+    /**
+     * Moves every completed task to the archive, then removes them from the list and journals
+     * that as one record. The archive is written first, so a failure leaves the list as it
+     * was. Archiving cannot be undone, and every session's undo history is cleared so that no
+     * step refers to an archived task.
+     */
+    private void archive(Ui ui) throws NamiException {
+        int[] positions = tasks.donePositions();
+        List<Task> archived = new ArrayList<>(positions.length);
+        for (int pos : positions) {
+            archived.add(tasks.get(pos));
+        }
+        if (!archived.isEmpty()) {
+            storage.archive(archived);
+            for (int i = positions.length - 1; i >= 0; i--) {
+                tasks.remove(positions[i]);
+            }
+            for (History history : histories) {
+                history.clear();
+            }
+            storage.logDelete(positions);
+        }
+        doneBound = 0;
+        ui.showArchived(archived, tasks.size());
+    }
+
+    /**
+     * Archives the completed tasks once more than {@link #archiveAfter} are done. The done
+     * count is only taken again when {@link #doneBound}, which every change that can mark
+     * tasks raises, passes the limit, so most changes skip the scan.
+     */
+    private void archiveIfNeeded(Ui ui) throws NamiException {
+        if (archiveAfter < 0 || doneBound <= archiveAfter) return;
+        doneBound = tasks.countDone();
+        if (doneBound > archiveAfter) archive(ui);
+    }
+
+    /**
+     * Records a change to one task; {@code t} is the added or deleted task, or {@code null}.
+     */
+    private void remember(History history, History.Kind kind, long id, Task t) {
+        history.record(new History.Step(kind, new long[] {id}, t == null ? null : new Task[] {t}));
+    }
+
+    /**
+     * Reverses the newest change in the session's {@code history}, or with {@code redo}
+     * applies the newest undone one again, and journals the result like any other change.
+     * Tasks that other sessions have since removed, or put back, are left as they are.
+     *
+     * @throws NamiException if there is nothing to undo or redo.
+     */
+    private void undo(boolean redo, History history, Ui ui) throws NamiException {
+        History.Step step = redo ? history.redo(s -> applies(s, redo)) : history.undo(s -> applies(s, redo));
+        if (step == null) {
+            throw new NamiException(redo ? "There is nothing to redo." : "There is nothing to undo.");
+        }
+        List<Task> affected;
+        if (restores(step, redo)) {
+            affected = restoreAll(step);
+        } else if (step.kind == History.Kind.ADD || step.kind == History.Kind.DELETE) {
+            affected = removeAll(step);
+        } else {
+            affected = setDoneAll(step.ids, (step.kind == History.Kind.MARK) == redo);
+        }
+        doneBound += affected.size(); // some may be done again
+        ui.showUndone(step.kind.word, affected, tasks.size(), redo);
+    }
+
+    /** Returns whether undoing or redoing {@code step} puts its tasks back into the list. */
+    private static boolean restores(History.Step step, boolean redo) {
+        return step.kind == History.Kind.ADD ? redo : step.kind == History.Kind.DELETE && !redo;
+    }
+
+    /**
+     * Returns whether undoing or redoing {@code step} still changes anything: whether any of
+     * its tasks is gone when it would put them back, or still there otherwise.
+     */
+    private boolean applies(History.Step step, boolean redo) {
+        boolean restores = restores(step, redo);
+        for (long id : step.ids) {
+            if ((tasks.positionOf(id) < 0) == restores) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Puts the tasks of {@code step} that are not in the list back under their ids, each
+     * journaled as an insert at the position it returns to.
+     */
+    private List<Task> restoreAll(History.Step step) throws NamiException {
+        List<Task> restored = new ArrayList<>(step.ids.length);
+        NamiException failed = null;
+        for (int i = 0; i < step.ids.length; i++) {
+            if (tasks.positionOf(step.ids[i]) >= 0) continue; // another session put it back
+            int idx = tasks.restore(step.ids[i], step.tasks[i]);
+            restored.add(step.tasks[i]);
+            try {
+                storage.logInsert(idx, step.tasks[i]);
+            } catch (NamiException e) {
+                failed = e; // the record stays queued for the next write
+            }
+        }
+        if (failed != null) throw failed;
+        return restored;
+    }
+
+    /**
+     * Removes the tasks of {@code step} that are still in the list and journals them as one
+     * record. The removed tasks replace the step's copies, so undoing again restores them as
+     * they are now.
+     */
+    private List<Task> removeAll(History.Step step) throws NamiException {
+        int[] positions = positionsOf(step.ids);
+        List<Task> removed = new ArrayList<>(positions.length);
+        int at = positions.length;
+        for (int i = step.ids.length - 1; i >= 0; i--) {
+            if (at > 0 && tasks.idAt(positions[at - 1]) == step.ids[i]) {
+                step.tasks[i] = tasks.remove(positions[--at]);
+                removed.add(0, step.tasks[i]);
+            }
+        }
+        storage.logDelete(positions);
+        return removed;
+    }
+
+    /** Marks or unmarks the tasks with the given ids and journals them as one record. */
+    private List<Task> setDoneAll(long[] ids, boolean done) throws NamiException {
+        int[] positions = positionsOf(ids);
+        List<Task> changed = new ArrayList<>(positions.length);
+        for (int pos : positions) {
+            changed.add(tasks.setDone(pos, done));
+        }
+        storage.logMark(positions, done);
+        return changed;
+    }
+
+    /**
+     * Maps ids in ascending order to the current positions, ascending too, of those still in
+     * the list. Another session may have removed some; archiving clears every history.
+     */
+    private int[] positionsOf(long[] ids) {
+        int[] positions = new int[ids.length];
+        int found = 0;
+        for (long id : ids) {
+            int pos = tasks.positionOf(id);
+            if (pos >= 0) positions[found++] = pos;
+        }
+        return Arrays.copyOf(positions, found);
+    }
+
+    /**
+     * Expands 1-based inclusive ranges to distinct 0-based positions in ascending order,
+     * checking each range like {@link #ensureRange}.
+     */
+    private int[] select(int[] ranges) throws NamiException {
+        BitSet chosen = new BitSet(tasks.size());
+        for (int i = 0; i < ranges.length; i += 2) {
+            ensureRange(ranges[i + 1]);
+            chosen.set(ranges[i] - 1, ranges[i + 1]);
+        }
+        return chosen.stream().toArray();
     }
 
     /**
@@ -122,7 +776,35 @@ public class Nami {
         }
     }
 
+    /**
+     * Starts Nami; pass {@code --batch} when feeding commands from a script, or
+     * {@code --server PORT} to share one task list between local clients.
+     */
     public static void main(String[] args) {
-        new Nami().run();
+        int port = -1;
+        if (args.length > 1 && "--server".equals(args[0])) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0) {
+                System.err.println("Usage: --server PORT");
+                return;
+            }
+        }
+        try {
+            if (port >= 0) {
+                // Sessions share one journal, so queue their changes and write them in batches.
+                new Nami(false, "ms:" + SERVER_FLUSH_MILLIS, Clock.systemDefaultZone()).serve(port);
+            } else {
+                new Nami(args.length > 0 && "--batch".equals(args[0])).run();
+            }
+        } catch (NamiException e) {
+            // Refuse to start rather than run on an empty list that would overwrite the save.
+            Ui ui = new Ui();
+            ui.showError(e.getMessage());
+            ui.close();
+        }
     }
 }
@@ -1,49 +1,103 @@
 package nami;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 /**
  * Parses raw user input into a structured {@link Parsed} command object.
  * Throws {@link NamiException} with friendly messages for invalid input.
+ * <p>
+ * Input is scanned in place: the command word, markers and indices are located by
+ * position, and only the text fields a command keeps are copied out.
  */
 public class Parser {
+    private static final String[] COMMANDS = {
+        "bye", "list", "mark", "unmark", "delete", "todo", "deadline", "event", "find", "due", "stats",
+        "on", "overlaps", "undo", "redo", "archive"
+    };
+    private static final String DUE_USAGE = "Try: due 2019-10-01 2019-10-31, due before 2019-10-15, "
+            + "due after 2019-10-15 or due next 5";
+    /** Tasks per page for {@code list PAGE}. */
+    static final int LIST_PAGE = 50;
+    private static final String LIST_USAGE = "'list' takes a page number or --limit/--offset. "
+            + "Try: list 2 or list --limit 50 --offset 100";
+    private static final String FIND_USAGE = "'find' takes --limit N, --offset N, --type todo|deadline|event, "
+            + "--done, --undone or --fuzzy before the keyword. Try: find --type deadline --undone book";
+    /** Best matches shown by {@code find --fuzzy} without {@code --limit}. */
+    static final int FUZZY_TOP = 10;
+    private static final String ARCHIVE_USAGE = "'archive' moves completed tasks to the archive, "
+            + "and 'archive find' searches it. Try: archive or archive find book";
+    private static final String OVERLAPS_USAGE = "Try: overlaps 2019-10-15 14:00 /to 2019-10-15 16:00 "
+            + "or overlaps 2019-10-15 /to 2019-10-20";
+    private static final ThreadLocal<Parsed> BUFFER = ThreadLocal.withInitial(() -> new Parsed(""));
 
     /**
      * Parses one line of user input and captures argument data for downstream handling.
+     * The returned object is a per-thread buffer that the next call on the same thread
+     * overwrites, so callers should finish with it before parsing again.
      *
      * @param input Raw text entered by the user.
      * @return A populated {@link Parsed} record describing the command and arguments.
      * @throws NamiException When the command is unknown or fails validation.
      */
     public static Parsed parse(String input) throws NamiException {
-        String trimmedInput = sanitizeInput(input);
+        String line = sanitizeInput(input);
 
-        String[] tokens = trimmedInput.split("\\s+", 2);
-        String commandWord = tokens[0];
-        String arguments = tokens.length > 1 ? tokens[1].trim() : "";
+        int wordEnd = 0;
+        while (wordEnd < line.length() && !isSpace(line.charAt(wordEnd))) wordEnd++;
+        String commandWord = commandWord(line, wordEnd);
+        int argStart = wordEnd;
+        while (argStart < line.length() && isSpace(line.charAt(argStart))) argStart++;
+        int argEnd = line.length();
+        while (argStart < argEnd && line.charAt(argStart) <= ' ') argStart++;
+        while (argEnd > argStart && line.charAt(argEnd - 1) <= ' ') argEnd--;
 
+        if (commandWord == null) {
+            throw new NamiException("I'm sorry, I don't know what that means :-(");
+        }
         switch (commandWord) {
         case "bye":
+        case "stats":
+        case "undo":
+        case "redo":
+            ensureNoArguments(commandWord, argStart, argEnd);
+            return BUFFER.get().reset(commandWord);
+
         case "list":
-            ensureNoArguments(commandWord, arguments);
-            return new Parsed(commandWord);
+            return parseList(line, argStart, argEnd, commandWord);
 
         case "mark":
         case "unmark":
         case "delete":
-            return parseIndexCommand(commandWord, arguments);
+            return parseIndexCommand(commandWord, line, argStart, argEnd);
 
         case "todo":
-            return parseTodo(arguments, commandWord);
+            return parseTodo(line, argStart, argEnd, commandWord);
 
         case "deadline":
-            return parseDeadline(arguments, commandWord);
+            return parseDeadline(line, argStart, argEnd, commandWord);
 
         case "event":
-            return parseEvent(arguments, commandWord);
+            return parseEvent(line, argStart, argEnd, commandWord);
 
         case "find":
-            return parseFind(arguments, commandWord);
+            return parseFind(line, argStart, argEnd, commandWord);
+
+        case "due":
+            return parseDue(line, argStart, argEnd, commandWord);
+
+        case "on":
+            return parseOn(line, argStart, argEnd, commandWord);
+
+        case "overlaps":
+            return parseOverlaps(line, argStart, argEnd, commandWord);
+
+        case "archive":
+            return parseArchive(line, argStart, argEnd, commandWord);
 
         default:
             throw new NamiException("I'm sorry, I don't know what that means :-(");
@@ -51,39 +105,91 @@ public class Parser {
     }
 
     /**
-     * Validates that a space-separated argument string contains exactly one positive integer.
+     * Returns the known command spelled by {@code line[0, end)}, or {@code null}.
+     */
+    private static String commandWord(String line, int end) {
+        for (String command : COMMANDS) {
+            if (command.length() == end && line.regionMatches(0, command, 0, end)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validates that {@code s[from, to)} contains exactly one positive integer and returns it.
      *
-     * @param s   The argument substring to validate.
      * @param cmd Command word for error messaging context.
      * @throws NamiException if the argument is missing, malformed, or out of range.
      */
-    private static void requireSinglePositiveInteger(String s, String cmd) throws NamiException {
-        if (s == null || s.isEmpty()) {
+    private static int requireSinglePositiveInteger(String s, int from, int to, String cmd) throws NamiException {
+        if (from >= to) {
             throw new NamiException("Please provide a task number. Try: " + cmd + " 2");
         }
-        String[] tokens = s.split("\\s+");
-        if (tokens.length != 1) {
-            throw new NamiException("Only one number is allowed. Try: " + cmd + " 2");
+        for (int i = from; i < to; i++) {
+            if (isSpace(s.charAt(i))) {
+                throw new NamiException("Only one number is allowed. Try: " + cmd + " 2");
+            }
         }
-        String n = tokens[0];
-        if (!n.matches("\\d+")) {
-            throw new NamiException("Task number must be a positive integer. Try: " + cmd + " 2");
+        long value = 0;
+        boolean tooLarge = false;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NamiException("Task number must be a positive integer. Try: " + cmd + " 2");
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                tooLarge = true;
+                value = Integer.MAX_VALUE + 1L; // keep scanning for non-digits
+            }
         }
-        try {
-            Integer.parseInt(n);
-        } catch (NumberFormatException e) {
+        if (tooLarge) {
             throw new NamiException("Task number is too large. Try a smaller positive integer.");
         }
+        return (int) value;
     }
 
     /**
-     * Collapses repeating whitespace and trims leading/trailing spaces.
+     * Collapses repeating whitespace in {@code s[from, to)} and trims leading/trailing spaces.
+     * Text that is already normalised is returned as a plain substring.
      *
-     * @param s Text to normalise.
      * @return String with internal whitespace collapsed to single spaces.
      */
-    private static String normalizeSpaces(String s) {
-        return s.trim().replaceAll("\\s+", " ");
+    private static String normalizeSpaces(String s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        boolean clean = true;
+        for (int i = from; i < to && clean; i++) {
+            char c = s.charAt(i);
+            clean = !isSpace(c) || (c == ' ' && !isSpace(s.charAt(i + 1)));
+        }
+        if (clean) return s.substring(from, to);
+
+        StringBuilder sb = new StringBuilder(to - from);
+        boolean inSpace = false;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                inSpace = true;
+            } else {
+                if (inSpace) sb.append(' ');
+                inSpace = false;
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Matches the regex class {@code \s}: space, tab, newline, vertical tab, form feed, return. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** Returns whether {@code s[from, to)} is empty once trimmed. */
+    private static boolean isBlank(String s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        return from >= to;
     }
 
     private static String sanitizeInput(String input) throws NamiException {
@@ -97,44 +203,112 @@ public class Parser {
         return trimmed;
     }
 
-    private static void ensureNoArguments(String commandWord, String arguments) throws NamiException {
-        if (!arguments.isEmpty()) {
+    private static void ensureNoArguments(String commandWord, int argStart, int argEnd) throws NamiException {
+        if (argStart < argEnd) {
             throw new NamiException("'" + commandWord + "' does not take any arguments.");
         }
     }
 
-    private static Parsed parseIndexCommand(String commandWord, String arguments) throws NamiException {
-        int index = parseSinglePositiveInteger(arguments, commandWord);
-        Parsed parsedCommand = new Parsed(commandWord);
+    /**
+     * Parses the target of mark/unmark/delete: one task number, a list of numbers and
+     * ranges such as {@code 1,4,9-20}, or {@code done} (delete only).
+     */
+    private static Parsed parseIndexCommand(String commandWord, String line, int argStart, int argEnd)
+            throws NamiException {
+        if (commandWord.equals("delete") && argEnd - argStart == 4 && line.startsWith("done", argStart)) {
+            Parsed parsedCommand = BUFFER.get().reset(commandWord);
+            parsedCommand.doneOnly = true;
+            return parsedCommand;
+        }
+        int[] ranges = parseRanges(line, argStart, argEnd, commandWord);
+        if (ranges != null) {
+            Parsed parsedCommand = BUFFER.get().reset(commandWord);
+            parsedCommand.ranges = ranges;
+            return parsedCommand;
+        }
+        int index = requireSinglePositiveInteger(line, argStart, argEnd, commandWord);
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
         parsedCommand.index = index;
         return parsedCommand;
     }
 
-    private static Parsed parseTodo(String arguments, String commandWord) throws NamiException {
-        if (arguments.isEmpty()) {
+    /**
+     * Parses task numbers and ranges such as {@code 1,4,9-20} into inclusive 1-based pairs.
+     * Returns {@code null} unless {@code s[from, to)} has that shape with at least one comma
+     * or dash, so anything else is reported as a single malformed task number.
+     */
+    private static int[] parseRanges(String s, int from, int to, String cmd) throws NamiException {
+        int[] pairs = new int[8];
+        int count = 0;
+        boolean bulk = false;
+        int i = from;
+        while (true) {
+            int startEnd = digitsEnd(s, i, to);
+            if (startEnd == i) return null;
+            int rangeStart = i;
+            int rangeEnd = startEnd;
+            i = startEnd;
+            if (i < to && s.charAt(i) == '-') {
+                rangeEnd = digitsEnd(s, i + 1, to);
+                if (rangeEnd == i + 1) return null;
+                i = rangeEnd;
+                bulk = true;
+            }
+            int first = requireSinglePositiveInteger(s, rangeStart, startEnd, cmd);
+            int last = rangeEnd == startEnd ? first : requireSinglePositiveInteger(s, startEnd + 1, rangeEnd, cmd);
+            if (count == pairs.length) pairs = Arrays.copyOf(pairs, count * 2);
+            pairs[count++] = first;
+            pairs[count++] = last;
+            while (i < to && isSpace(s.charAt(i))) i++;
+            if (i == to) break;
+            if (s.charAt(i) != ',') return null;
+            bulk = true;
+            i++;
+            while (i < to && isSpace(s.charAt(i))) i++;
+        }
+        if (!bulk) return null;
+        for (int k = 0; k < count; k += 2) {
+            if (pairs[k] == 0 || pairs[k + 1] == 0) {
+                throw new NamiException("Task number must be a positive integer. Try: " + cmd + " 2-5");
+            }
+            if (pairs[k] > pairs[k + 1]) {
+                throw new NamiException("Range " + pairs[k] + "-" + pairs[k + 1] + " runs backwards. Try: "
+                        + cmd + " " + pairs[k + 1] + "-" + pairs[k]);
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    private static int digitsEnd(String s, int from, int to) {
+        while (from < to && s.charAt(from) >= '0' && s.charAt(from) <= '9') from++;
+        return from;
+    }
+
+    private static Parsed parseTodo(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        if (argStart >= argEnd) {
             throw new NamiException("The description of a todo cannot be empty. Try: " + commandWord + " read book");
         }
-        Parsed parsedCommand = new Parsed(commandWord);
-        parsedCommand.desc = normalizeSpaces(arguments);
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        parsedCommand.desc = normalizeSpaces(line, argStart, argEnd);
         return parsedCommand;
     }
 
-    private static Parsed parseDeadline(String arguments, String commandWord) throws NamiException {
-        int markerIndex = arguments.indexOf("/by");
+    private static Parsed parseDeadline(String line, int argStart, int argEnd, String commandWord)
+            throws NamiException {
+        int markerIndex = line.indexOf("/by", argStart);
         if (markerIndex < 0) {
             throw new NamiException("Deadline needs '/by'. Try: " + commandWord + " return book /by 2019-10-15");
         }
-        String descriptionPart = arguments.substring(0, markerIndex).trim();
-        if (descriptionPart.isEmpty()) {
+        if (isBlank(line, argStart, markerIndex)) {
             throw new NamiException("Deadline needs a description before /by.");
         }
-        String datePart = arguments.substring(markerIndex + 3).trim();
-        if (datePart.isEmpty()) {
+        if (isBlank(line, markerIndex + 3, argEnd)) {
             throw new NamiException("Deadline needs a date after /by. Use yyyy-MM-dd (e.g., 2019-10-15).");
         }
+        String datePart = line.substring(markerIndex + 3, argEnd).trim();
 
-        Parsed parsedCommand = new Parsed(commandWord);
-        parsedCommand.desc = normalizeSpaces(descriptionPart);
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        parsedCommand.desc = normalizeSpaces(line, argStart, markerIndex);
         parsedCommand.by = datePart; // keep raw for storage compatibility paths
         try {
             parsedCommand.dueDate = LocalDate.parse(datePart); // ISO yyyy-MM-dd
@@ -144,63 +318,320 @@ public class Parser {
         return parsedCommand;
     }
 
-    private static Parsed parseEvent(String arguments, String commandWord) throws NamiException {
-        int fromMarker = arguments.indexOf("/from");
-        int toMarker = arguments.indexOf("/to", fromMarker >= 0 ? fromMarker + 5 : 0);
+    private static Parsed parseEvent(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        int fromMarker = line.indexOf("/from", argStart);
+        int toMarker = line.indexOf("/to", fromMarker >= 0 ? fromMarker + 5 : argStart);
         if (fromMarker < 0 || toMarker < 0) {
             throw new NamiException("Event needs '/from' and '/to'. Try: " + commandWord + " meeting /from Mon 2pm /to 4pm");
         }
 
-        String descriptionPart = arguments.substring(0, fromMarker).trim();
-        if (descriptionPart.isEmpty()) {
+        if (isBlank(line, argStart, fromMarker)) {
             throw new NamiException("Event needs a description before /from.");
         }
-
-        String fromPart = arguments.substring(fromMarker + 5, toMarker).trim();
-        if (fromPart.isEmpty()) {
+        if (isBlank(line, fromMarker + 5, toMarker)) {
             throw new NamiException("Event needs a /from time.");
         }
-
-        String toPart = arguments.substring(toMarker + 3).trim();
-        if (toPart.isEmpty()) {
+        if (isBlank(line, toMarker + 3, argEnd)) {
             throw new NamiException("Event needs a /to time.");
         }
 
-        Parsed parsedCommand = new Parsed(commandWord);
-        parsedCommand.desc = normalizeSpaces(descriptionPart);
-        parsedCommand.from = normalizeSpaces(fromPart);
-        parsedCommand.to = normalizeSpaces(toPart);
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        parsedCommand.desc = normalizeSpaces(line, argStart, fromMarker);
+        parsedCommand.from = normalizeSpaces(line, fromMarker + 5, toMarker);
+        parsedCommand.to = normalizeSpaces(line, toMarker + 3, argEnd);
+        LocalDateTime start = Event.parseStart(parsedCommand.from);
+        LocalDateTime end = start == null ? null : Event.parseEnd(parsedCommand.to, start);
+        if (end != null && end.isBefore(start)) {
+            throw new NamiException("The event must not end before it starts.");
+        }
+        return parsedCommand;
+    }
+
+    /**
+     * Parses {@code on DATE} into the whole of that day.
+     */
+    private static Parsed parseOn(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        if (argStart >= argEnd) {
+            throw new NamiException("Please give a date. Try: " + commandWord + " 2019-10-15");
+        }
+        LocalDate day = parseDate(line.substring(argStart, argEnd));
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        parsedCommand.start = day.atStartOfDay();
+        parsedCommand.end = day.atTime(LocalTime.MAX);
+        return parsedCommand;
+    }
+
+    /**
+     * Parses {@code overlaps FROM /to TO}, with times written as for events:
+     * {@code yyyy-MM-dd HH:mm}, {@code yyyy-MM-dd}, or {@code HH:mm} for an end on the start's day.
+     */
+    private static Parsed parseOverlaps(String line, int argStart, int argEnd, String commandWord)
+            throws NamiException {
+        int toMarker = line.indexOf("/to", argStart);
+        if (toMarker < 0 || isBlank(line, argStart, toMarker) || isBlank(line, toMarker + 3, argEnd)) {
+            throw new NamiException("Please give a time range. " + OVERLAPS_USAGE);
+        }
+        LocalDateTime start = Event.parseStart(normalizeSpaces(line, argStart, toMarker));
+        LocalDateTime end = start == null ? null : Event.parseEnd(normalizeSpaces(line, toMarker + 3, argEnd), start);
+        if (end == null) {
+            throw new NamiException("Use times like yyyy-MM-dd HH:mm. " + OVERLAPS_USAGE);
+        }
+        if (end.isBefore(start)) {
+            throw new NamiException("The range must not end before it starts.");
+        }
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        parsedCommand.start = start;
+        parsedCommand.end = end;
+        return parsedCommand;
+    }
+
+    /**
+     * Parses {@code list}, {@code list PAGE} (pages of {@link #LIST_PAGE} tasks) and
+     * {@code list --limit N --offset N}.
+     */
+    private static Parsed parseList(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        if (argStart >= argEnd) return parsedCommand;
+        if (digitsEnd(line, argStart, argEnd) == argEnd) {
+            int page = parseCount(line, argStart, argEnd, LIST_USAGE);
+            if (page == 0) throw new NamiException(LIST_USAGE);
+            parsedCommand.offset = (int) Math.min(Integer.MAX_VALUE, (page - 1L) * LIST_PAGE);
+            parsedCommand.limit = LIST_PAGE;
+            return parsedCommand;
+        }
+        if (parseOptions(line, argStart, argEnd, parsedCommand, LIST_USAGE, false) != argEnd) {
+            throw new NamiException(LIST_USAGE);
+        }
         return parsedCommand;
     }
 
-    private static Parsed parseFind(String arguments, String commandWord) throws NamiException {
-        if (arguments.isEmpty()) {
+    /**
+     * Parses {@code find [--limit N] [--offset N] [--type TYPE] [--done|--undone] [--fuzzy] KEYWORD}.
+     * The keyword may be left out when a type or done filter is given, unless searching fuzzily.
+     */
+    private static Parsed parseFind(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        argStart = parseOptions(line, argStart, argEnd, parsedCommand, FIND_USAGE, true);
+        if (parsedCommand.fuzzy && parsedCommand.limit == 0) parsedCommand.limit = FUZZY_TOP;
+        if (argStart >= argEnd) {
+            if (!parsedCommand.fuzzy && (parsedCommand.type != 0 || parsedCommand.done != null)) return parsedCommand;
             throw new NamiException("Please provide a keyword. Try: " + commandWord + " book");
         }
-        Parsed parsedCommand = new Parsed(commandWord);
-        parsedCommand.keyword = normalizeSpaces(arguments); // allow multi-word phrase
+        parsedCommand.keyword = normalizeSpaces(line, argStart, argEnd); // allow multi-word phrase
+        return parsedCommand;
+    }
+
+    /**
+     * Parses {@code archive}, or {@code archive find} followed by the same options and keyword
+     * as {@code find} except {@code --fuzzy}, which becomes the command {@code "archive find"}.
+     */
+    private static Parsed parseArchive(String line, int argStart, int argEnd, String commandWord)
+            throws NamiException {
+        if (argStart >= argEnd) return BUFFER.get().reset(commandWord);
+        int wordEnd = argStart;
+        while (wordEnd < argEnd && !isSpace(line.charAt(wordEnd))) wordEnd++;
+        if (wordEnd - argStart != 4 || !line.startsWith("find", argStart)) throw new NamiException(ARCHIVE_USAGE);
+        while (wordEnd < argEnd && isSpace(line.charAt(wordEnd))) wordEnd++;
+        Parsed parsedCommand = parseFind(line, wordEnd, argEnd, commandWord + " find");
+        if (parsedCommand.fuzzy) throw new NamiException("'archive find' does not support --fuzzy.");
+        return parsedCommand;
+    }
+
+    /**
+     * Reads leading {@code --limit N} and {@code --offset N} options into {@code into}, and
+     * with {@code filters} also {@code --type TYPE}, {@code --done}, {@code --undone} and
+     * {@code --fuzzy}.
+     *
+     * @return Position of the first character after the options.
+     * @throws NamiException with {@code usage} if an option has no valid value.
+     */
+    private static int parseOptions(String s, int from, int to, Parsed into, String usage, boolean filters)
+            throws NamiException {
+        int i = from;
+        while (i < to) {
+            int wordEnd = i;
+            while (wordEnd < to && !isSpace(s.charAt(wordEnd))) wordEnd++;
+            boolean limit = s.startsWith("--limit", i) && wordEnd - i == 7;
+            boolean offset = s.startsWith("--offset", i) && wordEnd - i == 8;
+            boolean type = filters && s.startsWith("--type", i) && wordEnd - i == 6;
+            boolean done = filters && s.startsWith("--done", i) && wordEnd - i == 6;
+            boolean undone = filters && s.startsWith("--undone", i) && wordEnd - i == 8;
+            boolean fuzzy = filters && s.startsWith("--fuzzy", i) && wordEnd - i == 7;
+            if (!limit && !offset && !type && !done && !undone && !fuzzy) break;
+            if (fuzzy) {
+                if (into.fuzzy) throw new NamiException(usage);
+                into.fuzzy = true;
+                i = wordEnd;
+                while (i < to && isSpace(s.charAt(i))) i++;
+                continue;
+            }
+            if (done || undone) {
+                if (into.done != null) throw new NamiException(usage);
+                into.done = done;
+                i = wordEnd;
+                while (i < to && isSpace(s.charAt(i))) i++;
+                continue;
+            }
+            int valueStart = wordEnd;
+            while (valueStart < to && isSpace(s.charAt(valueStart))) valueStart++;
+            int valueEnd = valueStart;
+            while (valueEnd < to && !isSpace(s.charAt(valueEnd))) valueEnd++;
+            if (type) {
+                into.type = typeCode(s.substring(valueStart, valueEnd), usage);
+            } else if (limit) {
+                int value = parseCount(s, valueStart, valueEnd, usage);
+                if (value == 0) throw new NamiException(usage);
+                into.limit = value;
+            } else {
+                into.offset = parseCount(s, valueStart, valueEnd, usage);
+            }
+            i = valueEnd;
+            while (i < to && isSpace(s.charAt(i))) i++;
+        }
+        return i;
+    }
+
+    /** Maps a task type name to its storage code, throwing {@code usage} for anything else. */
+    private static char typeCode(String name, String usage) throws NamiException {
+        switch (name) {
+        case "todo":
+            return 'T';
+        case "deadline":
+            return 'D';
+        case "event":
+            return 'E';
+        default:
+            throw new NamiException(usage);
+        }
+    }
+
+    /** Parses a non-negative count, throwing {@code usage} if {@code s[from, to)} is not one. */
+    private static int parseCount(String s, int from, int to, String usage) throws NamiException {
+        if (from >= to || digitsEnd(s, from, to) != to) throw new NamiException(usage);
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) throw new NamiException(usage);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses {@code due DATE [DATE]}, {@code due before|after DATE} and {@code due next N}
+     * into an inclusive date range or a count.
+     */
+    private static Parsed parseDue(String line, int argStart, int argEnd, String commandWord) throws NamiException {
+        String[] words = words(line, argStart, argEnd);
+        if (words.length == 0 || words.length > 2) {
+            throw new NamiException("Please give a date range. " + DUE_USAGE);
+        }
+        Parsed parsedCommand = BUFFER.get().reset(commandWord);
+        switch (words[0]) {
+        case "next":
+            if (words.length != 2) throw new NamiException("Please give a count. Try: due next 5");
+            try {
+                parsedCommand.count = requireSinglePositiveInteger(words[1], 0, words[1].length(), "due next");
+            } catch (NamiException e) {
+                parsedCommand.count = 0;
+            }
+            if (parsedCommand.count == 0) {
+                throw new NamiException("The count must be a positive integer. Try: due next 5");
+            }
+            break;
+        case "before":
+            if (words.length != 2) throw new NamiException("Please give a date. " + DUE_USAGE);
+            parsedCommand.dueTo = parseDate(words[1]).minusDays(1);
+            break;
+        case "after":
+            if (words.length != 2) throw new NamiException("Please give a date. " + DUE_USAGE);
+            parsedCommand.dueFrom = parseDate(words[1]).plusDays(1);
+            break;
+        default:
+            parsedCommand.dueFrom = parseDate(words[0]);
+            parsedCommand.dueTo = words.length == 2 ? parseDate(words[1]) : parsedCommand.dueFrom;
+            if (parsedCommand.dueTo.isBefore(parsedCommand.dueFrom)) {
+                throw new NamiException("The first date must not be after the second one.");
+            }
+            break;
+        }
         return parsedCommand;
     }
 
-    private static int parseSinglePositiveInteger(String arguments, String commandWord) throws NamiException {
-        requireSinglePositiveInteger(arguments, commandWord);
-        return Integer.parseInt(arguments.trim());
+    private static LocalDate parseDate(String text) throws NamiException {
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException ex) {
+            throw new NamiException("Use date format yyyy-MM-dd (e.g., 2019-10-15).");
+        }
+    }
+
+    /** Splits {@code s[from, to)} on runs of whitespace. */
+    private static String[] words(String s, int from, int to) {
+        List<String> out = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            while (i < to && isSpace(s.charAt(i))) i++;
+            int start = i;
+            while (i < to && !isSpace(s.charAt(i))) i++;
+            if (i > start) out.add(s.substring(start, i));
+        }
+        return out.toArray(new String[0]);
     }
 
     /**
-     * Immutable command payload produced by {@link Parser#parse(String)}.
+     * Command payload produced by {@link Parser#parse(String)}.
      * Fields default to empty/zero and are populated depending on the command.
+     * Instances returned by the parser are reused per thread; see {@link #reset(String)}.
      */
     public static class Parsed {
-        public final String cmd;
+        public String cmd;
         public String desc = "";
         public String by   = "";
         public String from = "";
         public String to   = "";
         public Integer index = null;
+        public int[] ranges = null;        // mark/unmark/delete 1,4,9-20: inclusive 1-based pairs
+        public boolean doneOnly = false;   // delete done
         public LocalDate dueDate = null;   // Level-8
         public String keyword = "";        // Level-9
+        public LocalDate dueFrom = null;   // due: first day, null for open-ended
+        public LocalDate dueTo = null;     // due: last day, null for open-ended
+        public int count = 0;              // due next N
+        public int offset = 0;             // list/find: results to skip
+        public int limit = 0;              // list/find: results to show, 0 for all
+        public char type = 0;              // find --type: 'T', 'D' or 'E', 0 for any
+        public Boolean done = null;        // find --done/--undone, null for either
+        public boolean fuzzy = false;      // find --fuzzy: rank by closeness instead of exact matches
+        public LocalDateTime start = null; // on/overlaps: first instant
+        public LocalDateTime end = null;   // on/overlaps: last instant, inclusive
 
         public Parsed(String cmd) { this.cmd = cmd; }
+
+        /**
+         * Clears every field so the object can describe a new command.
+         */
+        Parsed reset(String cmd) {
+            this.cmd = cmd;
+            this.desc = "";
+            this.by = "";
+            this.from = "";
+            this.to = "";
+            this.index = null;
+            this.ranges = null;
+            this.doneOnly = false;
+            this.dueDate = null;
+            this.keyword = "";
+            this.dueFrom = null;
+            this.dueTo = null;
+            this.count = 0;
+            this.offset = 0;
+            this.limit = 0;
+            this.type = 0;
+            this.done = null;
+            this.fuzzy = false;
+            this.start = null;
+            this.end = null;
+            return this;
+        }
     }
 }
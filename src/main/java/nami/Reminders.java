@@ -0,0 +1,291 @@
+package nami;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+/**
+ * Reminders for unfinished tasks with parsed dates: "due soon" from the day before a
+ * deadline, "overdue" once its day has passed, and "starting soon" shortly before an event.
+ * Pending reminders sit in a hierarchical timing wheel of one-minute ticks: {@link #LEVELS}
+ * wheels of 64 slots each, every level 64 times coarser than the one below, so adding or
+ * cancelling one is O(1) and advancing a tick only touches the reminders due then, plus
+ * the occasional cascade of a coarser slot into finer ones. Nothing scans the list.
+ * <p>
+ * A single daemon thread advances the wheel every minute ({@link #start}); the time comes
+ * from an injected {@link Clock}, so {@link #advance} can also be driven by hand. Fired
+ * reminders are kept as a short log of {@link Notice}s that each session reads from where
+ * it left off. They name tasks by id, so the caller renders them with the current task.
+ */
+final class Reminders {
+    static final int LEVELS = 5;          // 64^5 minutes is about two thousand years
+    static final int MAX_NOTICES = 1000;  // older notices are dropped once this many wait
+    static final long EVENT_LEAD_MINUTES = 15;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /** What a notice says about its task. */
+    enum Kind {
+        DUE_SOON("Due soon: "), OVERDUE("Overdue: "), STARTING("Starting soon: "), SUMMARY("");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    /** One fired reminder, or with {@link Kind#SUMMARY} a line of text about many. */
+    static final class Notice {
+        final long seq;
+        final long id;    // task id, or -1 for a summary
+        final Kind kind;
+        final String text; // summary text, or null
+
+        Notice(long seq, long id, Kind kind, String text) {
+            this.seq = seq;
+            this.id = id;
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+    /** A pending reminder, linked into one wheel slot. */
+    private static final class Entry {
+        final long id;
+        Kind kind;
+        long due;  // tick the reminder fires at
+        long then; // tick of the overdue reminder that follows a due-soon one, or -1
+        int level;
+        int slot;
+        Entry prev;
+        Entry next;
+
+        Entry(long id, Kind kind, long due, long then) {
+            this.id = id;
+            this.kind = kind;
+            this.due = due;
+            this.then = then;
+        }
+    }
+
+    private final Clock clock;
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS]; // heads of doubly linked slot lists
+    private final Map<Long, Entry> byId = new HashMap<>();
+    private final Deque<Notice> notices = new ArrayDeque<>();
+    private long now; // last tick advanced to
+    private long seq;
+    private ScheduledExecutorService ticker;
+
+    Reminders(Clock clock) {
+        this.clock = clock;
+        this.now = tick(clock);
+    }
+
+    /**
+     * Drops every pending reminder and registers the tasks of {@code tasks} in one pass.
+     * Reminders whose time has already come are not fired one by one but summed up in a
+     * single summary notice.
+     */
+    synchronized void rebuild(TaskList tasks) {
+        for (Entry[] level : wheel) {
+            Arrays.fill(level, null);
+        }
+        byId.clear();
+        now = tick(clock);
+        int[] passed = new int[Kind.values().length];
+        tasks.forEachDated((t, id) -> {
+            Kind missed = schedule(id, t);
+            if (missed != null) passed[missed.ordinal()]++;
+        });
+        String summary = summary(passed[Kind.OVERDUE.ordinal()], passed[Kind.DUE_SOON.ordinal()],
+                passed[Kind.STARTING.ordinal()]);
+        if (summary != null) publish(-1, Kind.SUMMARY, summary);
+    }
+
+    /**
+     * Registers {@code t}, replacing any reminder it had. If its reminder time has already
+     * come, as for a deadline added after its day, the reminder fires at once.
+     */
+    synchronized void register(long id, Task t) {
+        cancel(id);
+        Kind missed = schedule(id, t);
+        if (missed != null) publish(id, missed, null);
+    }
+
+    /** Cancels the pending reminder of the task with this id, if any. */
+    synchronized void cancel(long id) {
+        Entry e = byId.remove(id);
+        if (e != null) unlink(e);
+    }
+
+    /** Returns the notices published after {@code seen}, oldest first. */
+    synchronized List<Notice> since(long seen) {
+        List<Notice> out = new ArrayList<>();
+        for (Notice n : notices) {
+            if (n.seq > seen) out.add(n);
+        }
+        return out;
+    }
+
+    /**
+     * Advances the wheel to the clock's current minute, firing every reminder due up to it.
+     * A due-soon reminder whose overdue time has also passed fires as overdue only.
+     */
+    synchronized void advance() {
+        long target = tick(clock);
+        while (now < target) {
+            now++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0) cascade(level);
+            }
+            int slot = (int) (now & (SLOTS - 1));
+            Entry e = wheel[0][slot];
+            wheel[0][slot] = null;
+            while (e != null) {
+                Entry next = e.next;
+                e.prev = null;
+                e.next = null;
+                fire(e, target);
+                e = next;
+            }
+        }
+    }
+
+    /** Starts the thread that calls {@link #advance} at the start of every minute. */
+    synchronized void start() {
+        if (ticker != null) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nami-reminders");
+            t.setDaemon(true);
+            return t;
+        });
+        long untilNextMinute = 60_000 - clock.millis() % 60_000;
+        ticker.scheduleAtFixedRate(this::advance, untilNextMinute, 60_000, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (ticker != null) ticker.shutdownNow();
+        ticker = null;
+    }
+
+    /**
+     * Queues the next reminder of {@code t}, if it is an unfinished task with a parsed date.
+     *
+     * @return The kind of reminder whose time had already come, or null.
+     */
+    private Kind schedule(long id, Task t) {
+        if (t.isDone()) return null;
+        if (t instanceof Deadline) {
+            LocalDate by = ((Deadline) t).getByDate();
+            if (by == null) return null;
+            long soon = tick(by.minusDays(1).atStartOfDay());
+            long overdue = tick(by.plusDays(1).atStartOfDay());
+            if (overdue <= now) return Kind.OVERDUE;
+            if (soon <= now) {
+                insert(new Entry(id, Kind.OVERDUE, overdue, -1));
+                return Kind.DUE_SOON;
+            }
+            insert(new Entry(id, Kind.DUE_SOON, soon, overdue));
+        } else if (t instanceof Event) {
+            LocalDateTime start = ((Event) t).getStart();
+            if (start == null) return null;
+            long begins = tick(start);
+            if (begins <= now) return null; // started or over: nothing left to remind of
+            long soon = begins - EVENT_LEAD_MINUTES;
+            if (soon <= now) return Kind.STARTING;
+            insert(new Entry(id, Kind.STARTING, soon, -1));
+        }
+        return null;
+    }
+
+    private void fire(Entry e, long target) {
+        if (e.kind == Kind.DUE_SOON) {
+            if (e.then > target) publish(e.id, Kind.DUE_SOON, null); // else slept through both
+            e.kind = Kind.OVERDUE;
+            e.due = e.then;
+            e.then = -1;
+            if (e.due > now) {
+                insert(e);
+                return;
+            }
+        }
+        byId.remove(e.id);
+        publish(e.id, e.kind, null);
+    }
+
+    private void publish(long id, Kind kind, String text) {
+        notices.addLast(new Notice(++seq, id, kind, text));
+        if (notices.size() > MAX_NOTICES) notices.removeFirst();
+    }
+
+    /** Moves the reminders in the current slot of {@code level} down to finer levels. */
+    private void cascade(int level) {
+        int slot = (int) ((now >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        Entry e = wheel[level][slot];
+        wheel[level][slot] = null;
+        while (e != null) {
+            Entry next = e.next;
+            e.prev = null;
+            e.next = null;
+            insert(e);
+            e = next;
+        }
+    }
+
+    /**
+     * Links {@code e} into the slot for its due tick. An entry due now goes to the current
+     * level-0 slot, which is only reached by cascading just before that slot fires.
+     */
+    private void insert(Entry e) {
+        long due = Math.max(e.due, now);
+        long delta = due - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        e.level = level;
+        e.slot = (int) ((due >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        e.prev = null;
+        e.next = wheel[level][e.slot];
+        if (e.next != null) e.next.prev = e;
+        wheel[level][e.slot] = e;
+        byId.put(e.id, e);
+    }
+
+    private void unlink(Entry e) {
+        if (e.prev != null) {
+            e.prev.next = e.next;
+        } else if (wheel[e.level][e.slot] == e) {
+            wheel[e.level][e.slot] = e.next;
+        }
+        if (e.next != null) e.next.prev = e.prev;
+        e.prev = null;
+        e.next = null;
+    }
+
+    private long tick(LocalDateTime time) {
+        return Math.floorDiv(time.atZone(clock.getZone()).toEpochSecond(), 60);
+    }
+
+    private static long tick(Clock clock) {
+        return Math.floorDiv(clock.millis(), 60_000);
+    }
+
+    private static String summary(int overdue, int dueSoon, int starting) {
+        List<String> parts = new ArrayList<>();
+        if (overdue > 0) parts.add(overdue + (overdue == 1 ? " deadline is" : " deadlines are") + " overdue");
+        if (dueSoon > 0) parts.add(dueSoon + (dueSoon == 1 ? " deadline is" : " deadlines are") + " due soon");
+        if (starting > 0) parts.add(starting + (starting == 1 ? " event starts" : " events start") + " soon");
+        return parts.isEmpty() ? null : String.join(", ", parts) + ".";
+    }
+}
@@ -0,0 +1,308 @@
+package nami;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+/**
+ * Text snapshot split across several files, chosen with {@code -Dnami.shards=type|month}.
+ * The snapshot file itself becomes a small manifest naming one shard file per key: per
+ * task type, or also per month of a deadline's date or an event's parsed start. Each shard
+ * line starts with the task's id, which is its place in the one list they make up.
+ * <p>
+ * Writing a snapshot only rewrites shards whose content changed; the rest are named again
+ * in the new manifest as they are. Shard files are never overwritten: a rewritten shard
+ * gets a new generation number, so the manifest rename stays the single commit point and
+ * the backup manifest keeps the files it names. Loading reads the shards in parallel and
+ * merges them by id.
+ */
+final class Shards {
+    static final String MANIFEST_HEADER = "# nami shards v1";
+    private static final String SHARD_HEADER = "# nami snapshot v2";
+    private static final String CHECKSUM_PREFIX = "# crc32 ";
+    private static final String SUFFIX = ".shard";
+
+    /** How tasks are assigned to shards. */
+    enum Scheme {
+        TYPE, MONTH;
+
+        /** Parses {@code type} or {@code month}; anything else means no sharding. */
+        static Scheme parse(String spec) {
+            if ("type".equals(spec)) return TYPE;
+            if ("month".equals(spec)) return MONTH;
+            return null;
+        }
+    }
+
+    /** One manifest line: a shard key, its file, task count and checksum of its lines. */
+    private static final class Entry {
+        final String key;
+        final String file;
+        final int count;
+        final long crc;
+
+        Entry(String key, String file, int count, long crc) {
+            this.key = key;
+            this.file = file;
+            this.count = count;
+            this.crc = crc;
+        }
+    }
+
+    final Scheme scheme; // null: read manifests, but write single-file snapshots
+    private final Storage storage;
+    private final Path dir;
+    private final String base;
+    private final Metrics metrics;
+    private final Map<String, Entry> written = new HashMap<>(); // by key, as last read or written
+    private long generation;
+
+    Shards(Storage storage, Path dir, String base, Scheme scheme, Metrics metrics) {
+        this.storage = storage;
+        this.dir = dir;
+        this.base = base;
+        this.scheme = scheme;
+        this.metrics = metrics;
+    }
+
+    /** Returns whether {@code path} is a shard manifest rather than a plain snapshot. */
+    static boolean isManifest(Path path) throws IOException {
+        byte[] header = MANIFEST_HEADER.getBytes(StandardCharsets.US_ASCII);
+        byte[] start = new byte[header.length];
+        try (var in = Files.newInputStream(path)) {
+            return in.readNBytes(start, 0, start.length) == start.length && Arrays.equals(start, header);
+        }
+    }
+
+    /**
+     * Reads the shards a manifest names, in parallel, into one list ordered by id.
+     *
+     * @throws IOException if the manifest or a shard cannot be read or fails its checksum.
+     */
+    synchronized TaskList read(Path manifest, boolean columnar) throws IOException {
+        List<Entry> entries = readManifest(manifest);
+        List<CompletableFuture<Shard>> loads = new ArrayList<>();
+        for (Entry e : entries) {
+            generation = Math.max(generation, generationOf(e.file)); // never reuse a name, even if this read fails
+            loads.add(CompletableFuture.supplyAsync(() -> Shard.read(dir.resolve(e.file), e.count)));
+        }
+        List<Shard> runs = new ArrayList<>();
+        try {
+            for (CompletableFuture<Shard> load : loads) {
+                runs.add(load.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+        // Merge pairwise rather than through a heap: shards split by month interleave finely,
+        // and a few linear passes over the arrays beat a heap operation per task.
+        while (runs.size() > 1) {
+            List<Shard> merged = new ArrayList<>();
+            for (int i = 0; i + 1 < runs.size(); i += 2) {
+                merged.add(Shard.merge(runs.get(i), runs.get(i + 1)));
+            }
+            if (runs.size() % 2 == 1) merged.add(runs.get(runs.size() - 1));
+            runs = merged;
+        }
+        TaskList tasks = new TaskList(columnar);
+        if (!runs.isEmpty()) {
+            Shard all = runs.get(0);
+            for (int i = 0; i < all.size; i++) {
+                tasks.add(all.tasks[i], all.keys[i]);
+            }
+        }
+        written.clear();
+        for (Entry e : entries) {
+            written.put(e.key, e);
+        }
+        return tasks;
+    }
+
+    /**
+     * Writes a manifest for {@code tasks} to {@code target}, rewriting only shards whose
+     * lines differ from the ones last read or written.
+     *
+     * @param ids Task ids in list order, or {@code null} to key tasks by position.
+     */
+    synchronized void write(Path target, List<Task> tasks, long[] ids) throws IOException {
+        Map<String, List<String>> groups = new TreeMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task t = tasks.get(i);
+            String line = Storage.encode(t);
+            if (line == null) continue;
+            groups.computeIfAbsent(keyOf(t), k -> new ArrayList<>()).add((ids == null ? i : ids[i]) + " | " + line);
+        }
+        generation++;
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            List<String> lines = group.getValue();
+            long crc = checksum(lines);
+            Entry old = written.get(group.getKey());
+            if (old != null && old.crc == crc && old.count == lines.size() && Files.exists(dir.resolve(old.file))) {
+                entries.add(old);
+                metrics.shardsKept.incrementAndGet();
+                continue;
+            }
+            String name = base + "." + group.getKey() + "." + generation + SUFFIX;
+            storage.writeText(dir.resolve(name), SHARD_HEADER, lines, line -> line);
+            entries.add(new Entry(group.getKey(), name, lines.size(), crc));
+            metrics.shardsWritten.incrementAndGet();
+        }
+        storage.writeText(target, MANIFEST_HEADER, entries, e -> String.format(Locale.ROOT, "%s | %s | %d | %08x",
+                e.key, e.file, e.count, e.crc));
+        written.clear();
+        for (Entry e : entries) {
+            written.put(e.key, e);
+        }
+    }
+
+    /**
+     * Deletes shard files that none of the given manifests name. Files the manifests cannot
+     * be read for are kept.
+     */
+    synchronized void collectGarbage(Path... manifests) {
+        Set<String> live = new HashSet<>();
+        try {
+            for (Path manifest : manifests) {
+                if (Files.exists(manifest) && isManifest(manifest)) {
+                    for (Entry e : readManifest(manifest)) {
+                        live.add(e.file);
+                    }
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, base + ".*" + SUFFIX)) {
+                for (Path f : files) {
+                    if (!live.contains(f.getFileName().toString())) Files.deleteIfExists(f);
+                }
+            }
+        } catch (IOException ignored) {
+            // leftover shards only take space; the next collection retries
+        }
+    }
+
+    /** Returns the total size of this save's shard files. */
+    long savedBytes() {
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, base + ".*" + SUFFIX)) {
+            for (Path f : files) {
+                total += Files.size(f);
+            }
+        } catch (IOException ignored) {
+            // load() reports unreadable files itself
+        }
+        return total;
+    }
+
+    /** Returns the shard key of {@code t} under this scheme: T, D or E, plus the month if dated. */
+    private String keyOf(Task t) {
+        char type = t instanceof ToDo ? 'T' : t instanceof Deadline ? 'D' : 'E';
+        if (scheme != Scheme.MONTH) return String.valueOf(type);
+        LocalDate day = null;
+        if (t instanceof Deadline) {
+            day = ((Deadline) t).getByDate();
+        } else if (t instanceof Event) {
+            LocalDateTime start = ((Event) t).getStart();
+            day = start == null ? null : start.toLocalDate();
+        }
+        if (day == null) return String.valueOf(type);
+        return String.format(Locale.ROOT, "%c-%04d-%02d", type, day.getYear(), day.getMonthValue());
+    }
+
+    private List<Entry> readManifest(Path manifest) throws IOException {
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        List<Entry> entries = new ArrayList<>();
+        boolean verified = false;
+        for (String line : lines) {
+            if (line.startsWith(CHECKSUM_PREFIX)) {
+                verified = Long.parseLong(line.substring(CHECKSUM_PREFIX.length()).trim(), 16) == crc.getValue();
+                break;
+            }
+            crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+            if (line.startsWith("#")) continue;
+            String[] fields = line.split("\\s*\\|\\s*");
+            if (fields.length != 4) throw new IOException(manifest.getFileName() + " has a malformed line");
+            entries.add(new Entry(fields[0], fields[1], Integer.parseInt(fields[2]), Long.parseLong(fields[3], 16)));
+        }
+        if (!verified) throw new IOException(manifest.getFileName() + " failed its checksum");
+        return entries;
+    }
+
+    private static long checksum(List<String> lines) {
+        CRC32 crc = new CRC32();
+        for (String line : lines) {
+            crc.update(line.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return crc.getValue();
+    }
+
+    private static long generationOf(String file) {
+        String name = file.substring(0, file.length() - SUFFIX.length());
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** The tasks of one shard file, or of several merged, with their ids in ascending order. */
+    private static final class Shard {
+        long[] keys;
+        Task[] tasks;
+        int size;
+
+        static Shard merge(Shard a, Shard b) {
+            Shard out = new Shard();
+            out.size = a.size + b.size;
+            out.keys = new long[out.size];
+            out.tasks = new Task[out.size];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < out.size; k++) {
+                boolean fromA = j == b.size || (i < a.size && a.keys[i] <= b.keys[j]);
+                out.keys[k] = fromA ? a.keys[i] : b.keys[j];
+                out.tasks[k] = fromA ? a.tasks[i++] : b.tasks[j++];
+            }
+            return out;
+        }
+
+        static Shard read(Path file, int expected) {
+            Shard shard = new Shard();
+            shard.keys = new long[Math.max(expected, 1)];
+            shard.tasks = new Task[shard.keys.length];
+            try {
+                Storage.readSnapshot(file, true, (t, key) -> {
+                    if (shard.size == shard.keys.length) {
+                        shard.keys = Arrays.copyOf(shard.keys, shard.size * 2);
+                        shard.tasks = Arrays.copyOf(shard.tasks, shard.size * 2);
+                    }
+                    shard.keys[shard.size] = key;
+                    shard.tasks[shard.size++] = t;
+                });
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            if (shard.size != expected) {
+                throw new CompletionException(new IOException(file.getFileName() + " does not match its manifest"));
+            }
+            return shard;
+        }
+    }
+}
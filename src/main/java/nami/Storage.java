@@ -1,107 +1,1088 @@
 package nami;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 /**
  * Persistence layer that loads/saves tasks to a UTF-8 text file.
  * Deadline dates use ISO format (yyyy-MM-dd) when available.
+ * A file name ending in {@code .bin} selects the {@link BinaryTaskFile} format instead,
+ * whose tasks are only decoded when first read.
+ * <p>
+ * Mutations are appended to a journal next to the snapshot ({@code nami.txt.journal})
+ * instead of rewriting the whole file. Loading replays the journal over the snapshot,
+ * and once the journal holds more records than the list has tasks (and at least
+ * {@link #COMPACT_THRESHOLD}) it is folded into a fresh snapshot on a background thread.
+ * <p>
+ * Under a write-behind {@link Durability} policy, records are queued and written by that
+ * same thread in coalesced batches, so commands do not wait for the disk.
+ * <p>
+ * Snapshots are never overwritten in place: each is written to a temporary file and renamed
+ * over the old one, and text snapshots end with a CRC-32 footer. A compaction keeps the
+ * snapshot it replaced ({@code nami.txt.bak}) with the journal it folded in
+ * ({@code nami.txt.journal.bak}), so a snapshot that fails its checksum is rebuilt from them.
  */
 public class Storage {
+    /** Minimum journal records accepted before the journal is folded into a new snapshot. */
+    static final int COMPACT_THRESHOLD = 1000;
+    private static final int READ_BUFFER = 1 << 20;
+    private static final int MAX_FIELDS = 5;
+    private static final String TEXT_SUFFIX = ".txt";
+    private static final String BINARY_SUFFIX = ".bin";
+    private static final String SNAPSHOT_HEADER = "# nami snapshot v2";
+    private static final String CHECKSUM_PREFIX = "# crc32 ";
+    /** Archived tasks, shared by both formats so switching format keeps them. */
+    private static final String ARCHIVE_NAME = "nami.archive.gz";
+
     private final Path dir;
     private final Path file;
+    private final Path journal;      // records since the last snapshot
+    private final Path journalOld;   // records being folded by a running compaction
+    private final Path compacting;   // snapshot being written by a running compaction
+    private final Path otherFormat;  // same data in the other format, converted on load
+    private final Path backup;        // snapshot replaced by the last compaction
+    private final Path journalBackup; // records that compaction folded into the current snapshot
+    private final boolean binary;
+    private final boolean columnar;
+    private final Shards shards;
+    private final Archive archive;
+
+    private final Durability durability;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "nami-storage");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object ioLock = new Object();           // guards journalOut and rotation
+    private final List<String> pending = new ArrayList<>(); // write-behind queue
+    private boolean flushQueued;
+    private FileChannel journalOut;
+    private volatile IOException writeError; // last failed journal write, cleared once one succeeds
+    private volatile IOException compactionError;
+    private int journalRecords;
+    private Future<?> compaction;
+    private volatile String loadWarning; // set when load() had to salvage a damaged snapshot
+
+    private final Metrics metrics;
 
     /**
      * Creates a storage layer targeting {@code dirName/fileName}.
      *
      * @param dirName  Directory used to house the save file.
-     * @param fileName Name of the UTF-8 text file containing task data.
+     * @param fileName Name of the save file; {@code .bin} selects the binary format,
+     *                 anything else the UTF-8 text format.
      */
     public Storage(String dirName, String fileName) {
+        this(dirName, fileName, Durability.sync());
+    }
+
+    /**
+     * Creates a storage layer targeting {@code dirName/fileName} with the given policy
+     * for writing journal records.
+     *
+     * @param dirName    Directory used to house the save file.
+     * @param fileName   Name of the save file; {@code .bin} selects the binary format.
+     * @param durability When queued journal records are written to disk.
+     */
+    public Storage(String dirName, String fileName, Durability durability) {
+        this(dirName, fileName, durability, new Metrics(), false, null);
+    }
+
+    /**
+     * Creates a storage layer that records its disk activity in {@code metrics}.
+     *
+     * @param columnar    Whether loaded lists keep their tasks in {@link TaskColumns}.
+     * @param shardScheme How to split a text snapshot into {@link Shards}, or {@code null}
+     *                    for a single file. Ignored for the binary format.
+     */
+    Storage(String dirName, String fileName, Durability durability, Metrics metrics, boolean columnar,
+            Shards.Scheme shardScheme) {
+        this.durability = durability;
+        this.metrics = metrics;
+        this.columnar = columnar;
         this.dir = Paths.get(dirName);
         this.file = this.dir.resolve(fileName);
+        this.binary = fileName.endsWith(BINARY_SUFFIX);
+        int dot = fileName.lastIndexOf('.');
+        String base = dot < 0 ? fileName : fileName.substring(0, dot);
+        this.otherFormat = this.dir.resolve(base + (binary ? TEXT_SUFFIX : BINARY_SUFFIX));
+        this.journal = this.dir.resolve(fileName + ".journal");
+        this.journalOld = this.dir.resolve(fileName + ".journal.old");
+        this.compacting = this.dir.resolve(fileName + ".compact");
+        this.backup = this.dir.resolve(fileName + ".bak");
+        this.journalBackup = this.dir.resolve(fileName + ".journal.bak");
+        this.shards = new Shards(this, this.dir, fileName, binary ? null : shardScheme, metrics);
+        this.archive = new Archive(this.dir.resolve(ARCHIVE_NAME), metrics);
+        if (durability.everyMillis > 0) {
+            writer.scheduleAtFixedRate(this::flushPending,
+                    durability.everyMillis, durability.everyMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
      * Loads tasks from disk, tolerating malformed lines by skipping them.
-     * Missing directories/files are created on demand.
+     * Missing directories/files are created on demand, and data saved in the other format
+     * is converted first. The snapshot is streamed (text) or read and decoded lazily (binary) into the
+     * returned list, then any journal records are replayed over it in order. A snapshot that
+     * fails its checksum is set aside as {@code <name>.damaged} and rebuilt from the backup;
+     * a text one with no backup (say, edited by hand) is instead read from there as best it
+     * can be, and {@link #loadWarning} says so.
      *
-     * @return Mutable list populated with tasks reconstructed from storage.
+     * @return Task list populated with tasks reconstructed from storage.
+     * @throws NamiException if the saved tasks cannot be read and cannot be salvaged.
      */
-    public List<Task> load() {
-        List<Task> tasks = new ArrayList<>();
+    public TaskList load() throws NamiException {
+        long start = System.nanoTime();
         try {
             if (!Files.exists(dir)) Files.createDirectories(dir);
+            recoverCompaction();
+            if (!Files.exists(file) && Files.exists(otherFormat)) {
+                convertFrom(otherFormat);
+            }
             if (!Files.exists(file)) {
-                Files.createFile(file);
-                return tasks;
-            }
-            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
-                if (line.trim().isEmpty()) continue;
-                String[] parts = line.split("\\s*\\|\\s*");
-                if (parts.length < 3) continue;
-                String type = parts[0].trim();
-                boolean done = "1".equals(parts[1].trim());
-                String desc = parts[2].trim();
-
-                Task t;
-                switch (type) {
-                case "T":
-                    t = new ToDo(desc);
+                writeSnapshot(file, List.of(), null);
+            }
+            TaskList tasks;
+            try {
+                tasks = readSnapshot(file);
+            } catch (IOException e) {
+                if (Files.exists(backup)) {
+                    tasks = readSnapshot(backup);
+                    replay(journalBackup, tasks);
+                    Files.move(file, file.resolveSibling(file.getFileName() + ".damaged"),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    writeSnapshot(file, tasks);
+                } else if (e instanceof ChecksumException && !binary && !Shards.isManifest(file)) {
+                    tasks = salvage();
+                } else {
+                    throw e;
+                }
+            }
+            if (Files.exists(journalOld)) {
+                // A compaction did not finish: fold its journal now, before newer records.
+                replay(journalOld, tasks);
+                writeSnapshot(compacting, tasks);
+                promote();
+            }
+            journalRecords = replay(journal, tasks);
+            metrics.loadNanos = System.nanoTime() - start;
+            metrics.loadedTasks = tasks.size();
+            return tasks;
+        } catch (IOException e) {
+            throw new NamiException("Could not load tasks from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns why the last {@link #load} could only salvage the saved tasks, or {@code null}
+     * if it read them intact.
+     */
+    String loadWarning() { return loadWarning; }
+
+    /**
+     * Moves a text snapshot that failed its checksum aside as {@code <name>.damaged} and
+     * reads from there every line that still parses, as before checksums existed. The tasks
+     * are saved as a fresh snapshot for the journal to be replayed over.
+     */
+    private TaskList salvage() throws IOException {
+        Path damaged = file.resolveSibling(file.getFileName() + ".damaged");
+        Files.move(file, damaged, StandardCopyOption.REPLACE_EXISTING);
+        TaskList tasks = new TaskList(columnar);
+        readSnapshot(damaged, false, false, (t, key) -> tasks.add(t));
+        writeSnapshot(file, tasks);
+        loadWarning = file + " failed its checksum, so only the lines that could be read were loaded."
+                + " The original is kept as " + damaged + ".";
+        return tasks;
+    }
+
+    /**
+     * Returns roughly how many bytes {@link #load} will read: the snapshot (or the one in the
+     * other format it would convert) plus the journals. Only file sizes are checked, so this
+     * is cheap however large the save is.
+     */
+    long savedBytes() {
+        long total = 0;
+        for (Path p : List.of(file, otherFormat, journal, journalOld)) {
+            try {
+                if (Files.exists(p)) total += Files.size(p);
+            } catch (IOException ignored) {
+                // load() reports unreadable files itself
+            }
+        }
+        return total + shards.savedBytes();
+    }
+
+    /**
+     * Replaces the saved tasks with {@code tasks}. The snapshot is written to a temporary file
+     * and renamed over the old one, so a failure leaves the previous save intact. The journal
+     * and backup pair describe the old snapshot, so they are discarded.
+     *
+     * @param tasks Ordered tasks to persist.
+     * @throws NamiException if the snapshot cannot be written.
+     */
+    public void save(List<Task> tasks) throws NamiException {
+        awaitCompaction();
+        synchronized (ioLock) {
+            try {
+                synchronized (pending) {
+                    pending.clear();
+                }
+                closeJournal();
+                if (!Files.exists(dir)) Files.createDirectories(dir);
+                writeSnapshot(file, tasks, null);
+                Files.deleteIfExists(journal);
+                Files.deleteIfExists(journalBackup);
+                Files.deleteIfExists(backup);
+                shards.collectGarbage(file);
+                journalRecords = 0;
+                writeError = null;
+            } catch (IOException e) {
+                throw new NamiException("Could not save tasks: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends completed tasks to the archive ({@code nami.archive.gz}) and forces them to
+     * disk. Journal their removal from the list only after this returns.
+     *
+     * @throws NamiException if the archive cannot be written; it is left as it was.
+     */
+    public void archive(List<Task> tasks) throws NamiException {
+        long start = System.nanoTime();
+        try {
+            archive.append(tasks);
+        } catch (IOException e) {
+            throw new NamiException("Could not archive tasks: " + e.getMessage());
+        } finally {
+            metrics.storageNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Searches the archive; see {@link Archive#find}.
+     *
+     * @throws NamiException if the archive cannot be read.
+     */
+    Archive.Matches findArchived(TaskFilter filter, int offset, int limit) throws NamiException {
+        long start = System.nanoTime();
+        try {
+            return archive.find(filter, offset, limit);
+        } catch (IOException e) {
+            throw new NamiException("Could not read the archive: " + e.getMessage());
+        } finally {
+            metrics.storageNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Journals a task appended to the end of the list.
+     * Like the other {@code log} methods, this throws if the journal cannot be written; the
+     * record stays queued and is written by the next successful flush.
+     */
+    public void logAdd(Task t) throws NamiException {
+        String line = encode(t);
+        if (line != null) append("A | " + line);
+    }
+
+    /**
+     * Journals a task put back at a 0-based position, such as a deleted task restored by undo.
+     */
+    public void logInsert(int idx, Task t) throws NamiException {
+        String line = encode(t);
+        if (line != null) append("I | " + idx + " | " + line);
+    }
+
+    /**
+     * Journals the done state of the task at a 0-based position.
+     */
+    public void logMark(int idx, boolean done) throws NamiException {
+        append((done ? "M | " : "U | ") + idx);
+    }
+
+    /**
+     * Journals the done state of several tasks as one record.
+     *
+     * @param positions Distinct 0-based positions in ascending order.
+     */
+    public void logMark(int[] positions, boolean done) throws NamiException {
+        append((done ? "M | " : "U | ") + ranges(positions), positions.length);
+    }
+
+    /**
+     * Journals removal of the task at a 0-based position.
+     */
+    public void logDelete(int idx) throws NamiException {
+        append("X | " + idx);
+    }
+
+    /**
+     * Journals removal of several tasks as one record. Positions refer to the list before
+     * any of them is removed; replay removes from the highest down.
+     *
+     * @param positions Distinct 0-based positions in ascending order.
+     */
+    public void logDelete(int[] positions) throws NamiException {
+        append("X | " + ranges(positions), positions.length);
+    }
+
+    /**
+     * Folds the journal into a new snapshot in the background once it holds more records
+     * than there are tasks (and at least {@link #COMPACT_THRESHOLD}), which keeps the cost of
+     * rewriting the snapshot amortised O(1) per change. At most one compaction runs at a time.
+     *
+     * @param tasks Current in-memory tasks, which the journal must describe exactly.
+     */
+    public void compactIfNeeded(TaskList tasks) {
+        if (journalRecords < Math.max(COMPACT_THRESHOLD, tasks.size())) return;
+        if (compaction != null && !compaction.isDone()) return;
+        if (Files.exists(journalOld)) return; // a failed compaction is folded on next load
+        synchronized (ioLock) {
+            try {
+                flushPending(); // queued records belong to the journal being folded
+                synchronized (pending) {
+                    if (!pending.isEmpty()) return; // the journal is failing; nothing to fold yet
+                }
+                closeJournal();
+                Files.move(journal, journalOld, StandardCopyOption.REPLACE_EXISTING);
+                journalRecords = 0;
+            } catch (IOException e) {
+                return; // keep appending to the current journal and retry next time
+            }
+        }
+        // Only mark/unmark can change a copied task afterwards; those records are absolute
+        // (set done / set not done), so replaying the new journal over this copy stays correct.
+        List<Task> copy = new ArrayList<>(tasks.asList());
+        long[] ids = shards.scheme != null ? tasks.ids() : null;
+        compaction = writer.submit(() -> {
+            try {
+                writeSnapshot(compacting, copy, ids);
+                promote();
+                compactionError = null;
+            } catch (IOException e) {
+                compactionError = e; // the old journal stays and is folded on the next load
+            }
+        });
+    }
+
+    /**
+     * Waits for a running compaction, then writes every queued record and closes the
+     * journal so nothing is lost on exit.
+     *
+     * @throws NamiException if queued records could not be written.
+     */
+    public void close() throws NamiException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock) {
+            flushPending();
+            closeJournal();
+        }
+        IOException failed = writeError;
+        if (failed != null) throw new NamiException("Could not save tasks: " + failed.getMessage());
+    }
+
+    /**
+     * Describes how long snapshot writes, journal writes and fsyncs have taken so far, for
+     * weighing a {@link Durability} policy against throughput.
+     */
+    public String describeLatency() {
+        String text = "snapshot writes: " + metrics.snapshotWrites + "; journal writes: " + metrics.journalWrites
+                + "; fsyncs: " + metrics.fsyncs;
+        IOException failed = compactionError;
+        return failed == null ? text : text + "; last compaction failed: " + failed.getMessage();
+    }
+
+    private void awaitCompaction() {
+        if (compaction == null) return;
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // the task records its own failure in compactionError
+        }
+    }
+
+    /**
+     * Reads a snapshot in this storage's format: text is streamed into a list, binary is
+     * wrapped in a lazily decoded one.
+     *
+     * @throws IOException if the file cannot be read or fails its checksum.
+     */
+    private TaskList readSnapshot(Path source) throws IOException {
+        if (binary) {
+            BinaryTaskFile.Table table = BinaryTaskFile.open(source);
+            return new TaskList(table.size(), table::task, table::mayBeDated, columnar);
+        }
+        if (Shards.isManifest(source)) return shards.read(source, columnar);
+        TaskList tasks = new TaskList(columnar);
+        readSnapshot(source, false, (t, key) -> tasks.add(t));
+        return tasks;
+    }
+
+    /**
+     * Moves data saved in the other format (snapshot plus journal) into this format.
+     * The old snapshot is kept as {@code <name>.converted}.
+     */
+    private void convertFrom(Path source) throws IOException, NamiException {
+        Storage legacy = new Storage(dir.toString(), source.getFileName().toString());
+        TaskList converted = legacy.load();
+        legacy.close();
+        writeSnapshot(file, converted);
+        Files.deleteIfExists(legacy.journal);
+        Files.deleteIfExists(legacy.journalBackup);
+        Files.deleteIfExists(legacy.backup);
+        Files.move(source, source.resolveSibling(source.getFileName() + ".converted"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Completes or discards a compaction interrupted by a crash. While the old journal
+     * still exists the new snapshot was not committed, so it is dropped and the old journal
+     * replayed; once the old journal has become the backup journal the swap is finished.
+     * Leftover temporary files from interrupted writes are removed.
+     */
+    private void recoverCompaction() throws IOException {
+        Files.deleteIfExists(temporary(file));
+        Files.deleteIfExists(temporary(compacting));
+        if (!Files.exists(compacting)) return;
+        if (Files.exists(journalOld)) {
+            Files.delete(compacting);
+        } else {
+            if (Files.exists(file)) replace(file, backup);
+            replace(compacting, file);
+        }
+    }
+
+    /**
+     * Makes the snapshot in {@code compacting} current, keeping the one it replaces as the
+     * backup. Renaming the folded journal to the backup journal is the commit point: the
+     * backup snapshot plus that journal always rebuild the current snapshot.
+     */
+    private void promote() throws IOException {
+        replace(journalOld, journalBackup);
+        if (Files.exists(file)) replace(file, backup);
+        replace(compacting, file);
+        shards.collectGarbage(file, backup);
+    }
+
+    /**
+     * Renames {@code source} over {@code target} in one step where the file system allows it,
+     * then under an fsync policy forces the directory so the rename itself is durable.
+     */
+    private void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durability.fsync) {
+            try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException ignored) {
+                // not every platform can sync a directory; the file data itself is already forced
+            }
+        }
+    }
+
+    private static Path temporary(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /**
+     * Applies journal records to {@code tasks}, skipping records that no longer fit.
+     *
+     * @return Number of task changes read, counting each task a bulk record touches.
+     */
+    private static int replay(Path log, TaskList tasks) throws IOException {
+        if (!Files.exists(log)) return 0;
+        int count = 0;
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            if (line.length() < 4 || line.charAt(2) != '|') continue;
+            String payload = line.substring(3).trim();
+            try {
+                switch (line.charAt(0)) {
+                case 'A': {
+                    count++;
+                    Task t = decode(payload);
+                    if (t != null) tasks.add(t);
+                    break;
+                }
+                case 'I': {
+                    count++;
+                    int bar = payload.indexOf('|');
+                    Task t = bar < 0 ? null : decode(payload.substring(bar + 1).trim());
+                    if (t != null) tasks.insert(Integer.parseInt(payload.substring(0, bar).trim()), t);
                     break;
-                case "D": {
-                    String byField = parts.length > 3 ? parts[3].trim() : "";
-                    LocalDate date = null;
-                    try { date = LocalDate.parse(byField); } catch (DateTimeParseException ignored) { }
-                    t = (date != null) ? new Deadline(desc, date) : new Deadline(desc, byField);
+                }
+                case 'M':
+                case 'U': {
+                    int[] targets = positions(payload);
+                    count += targets.length;
+                    for (int idx : targets) {
+                        tasks.setDone(idx, line.charAt(0) == 'M');
+                    }
                     break;
                 }
-                case "E": {
-                    String from = parts.length > 3 ? parts[3].trim() : "";
-                    String to   = parts.length > 4 ? parts[4].trim() : "";
-                    t = new Event(desc, from, to);
+                case 'X': {
+                    int[] doomed = positions(payload);
+                    count += doomed.length;
+                    for (int i = doomed.length - 1; i >= 0; i--) {
+                        tasks.remove(doomed[i]);
+                    }
                     break;
                 }
                 default:
-                    continue;
+                    count++;
+                    break;
                 }
-                if (done) t.mark();
-                tasks.add(t);
+            } catch (NumberFormatException | IndexOutOfBoundsException ignored) { }
+        }
+        return count;
+    }
+
+    /** Writes positions in ascending order as a comma list, folding runs into {@code a-b}. */
+    private static String ranges(int[] positions) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < positions.length; i++) {
+            int run = i;
+            while (run + 1 < positions.length && positions[run + 1] == positions[run] + 1) run++;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(positions[i]);
+            if (run > i) sb.append('-').append(positions[run]);
+            i = run;
+        }
+        return sb.toString();
+    }
+
+    /** Reads a position list written by {@link #ranges}; a single position is the old record form. */
+    private static int[] positions(String payload) {
+        List<Integer> out = new ArrayList<>();
+        for (String part : payload.split(",")) {
+            int dash = part.indexOf('-');
+            int first = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+            int last = dash < 0 ? first : Integer.parseInt(part.substring(dash + 1));
+            for (int idx = first; idx <= last; idx++) {
+                out.add(idx);
             }
-        } catch (IOException ignored) { }
-        return tasks;
+        }
+        return out.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void append(String record) throws NamiException {
+        append(record, 1);
     }
 
     /**
-     * Writes the current task list to disk in the Duke storage format.
-     * Existing content is replaced atomically via truncate + write.
+     * Queues one record, then writes the queue at once under {@code sync} or schedules a
+     * write once enough records wait.
      *
-     * @param tasks Ordered tasks to persist.
+     * @param changes Tasks the record touches, which is what replaying it costs.
+     * @throws NamiException if the last journal write failed; queued records are retried.
      */
-    public void save(List<Task> tasks) {
-        try {
+    private void append(String record, int changes) throws NamiException {
+        long start = System.nanoTime();
+        journalRecords += changes;
+        boolean schedule;
+        synchronized (pending) {
+            pending.add(record);
+            schedule = durability.everyOps > 0 && pending.size() >= durability.everyOps && !flushQueued;
+            if (schedule) flushQueued = true;
+        }
+        if (durability.isSync()) {
+            flushPending();
+        } else if (schedule) {
+            writer.execute(this::flushPending);
+        }
+        metrics.storageNanos.addAndGet(System.nanoTime() - start);
+        IOException failed = writeError;
+        if (failed != null) {
+            throw new NamiException("Could not save tasks: " + failed.getMessage() + " (will retry)");
+        }
+    }
+
+    /**
+     * Writes every queued record as one batch. Runs on the storage thread, or on the
+     * caller under {@code sync} and while rotating or closing the journal. A failed batch
+     * goes back to the front of the queue.
+     */
+    private void flushPending() {
+        synchronized (ioLock) {
+            List<String> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) return;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                flushQueued = false;
+            }
+            try {
+                writeRecords(batch);
+                writeError = null;
+            } catch (IOException e) {
+                synchronized (pending) {
+                    pending.addAll(0, batch);
+                }
+                writeError = e;
+            }
+        }
+    }
+
+    /**
+     * Appends records to the journal in one write, forced to disk under an fsync policy.
+     * A batch that fails part-way is cut off again so retrying it cannot duplicate records.
+     */
+    private void writeRecords(List<String> records) throws IOException {
+        long start = System.nanoTime();
+        if (journalOut == null) {
             if (!Files.exists(dir)) Files.createDirectories(dir);
-            List<String> lines = new ArrayList<>();
-            for (Task t : tasks) {
-                if (t == null) continue;
-                if (t instanceof ToDo) {
-                    lines.add(String.format("T | %d | %s",
-                            t.getStatusIcon().equals("X") ? 1 : 0, t.getDescription()));
-                } else if (t instanceof Deadline) {
-                    Deadline d = (Deadline) t;
-                    lines.add(String.format("D | %d | %s | %s",
-                            t.getStatusIcon().equals("X") ? 1 : 0, d.getDescription(), d.getBy()));
-                } else if (t instanceof Event) {
-                    Event e = (Event) t;
-                    lines.add(String.format("E | %d | %s | %s | %s",
-                            t.getStatusIcon().equals("X") ? 1 : 0, e.getDescription(), e.getFrom(), e.getTo()));
+            journalOut = FileChannel.open(journal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        StringBuilder text = new StringBuilder();
+        for (String record : records) {
+            text.append(record).append('\n');
+        }
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+        int length = bytes.remaining();
+        long end = journalOut.size();
+        try {
+            while (bytes.hasRemaining()) journalOut.write(bytes);
+            if (durability.fsync) force(journalOut);
+        } catch (IOException e) {
+            try {
+                journalOut.truncate(end);
+            } catch (IOException ignored) {
+                // the original failure is what gets reported
+            }
+            closeJournal();
+            throw e;
+        }
+        metrics.journalWrites.record(System.nanoTime() - start);
+        metrics.journalBytes.addAndGet(length);
+    }
+
+    private void closeJournal() {
+        if (journalOut == null) return;
+        try {
+            journalOut.close();
+        } catch (IOException ignored) {
+            // every write was already checked; closing the channel only releases it
+        }
+        journalOut = null;
+    }
+
+    private void force(FileChannel ch) throws IOException {
+        long start = System.nanoTime();
+        ch.force(false);
+        metrics.fsyncs.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Writes a complete snapshot to {@code target} atomically: the data goes to a temporary
+     * file, forced to disk under an fsync policy, which then replaces {@code target} in one
+     * rename. A crash therefore leaves either the old snapshot or the new one, never a mix.
+     * Text snapshots start with a version line and end with a CRC-32 footer over everything
+     * before it; binary ones carry the checksum in their header. With a shard scheme, a text
+     * snapshot is a {@link Shards} manifest keyed by {@code ids}.
+     *
+     * @param ids Task ids in list order, or {@code null} to key tasks by position.
+     */
+    private void writeSnapshot(Path target, List<Task> tasks, long[] ids) throws IOException {
+        long start = System.nanoTime();
+        if (binary) {
+            Path tmp = temporary(target);
+            BinaryTaskFile.write(tmp, tasks);
+            commit(tmp, target);
+        } else if (shards.scheme != null) {
+            shards.write(target, tasks, ids);
+        } else {
+            writeText(target, SNAPSHOT_HEADER, tasks, Storage::encode);
+        }
+        metrics.snapshotWrites.record(System.nanoTime() - start);
+    }
+
+    private void writeSnapshot(Path target, TaskList tasks) throws IOException {
+        writeSnapshot(target, tasks.asList(), shards.scheme != null ? tasks.ids() : null);
+    }
+
+    /**
+     * Writes {@code header}, then one line per item that {@code format} does not map to
+     * {@code null}, then a CRC-32 footer over all of it to {@code target}, atomically as
+     * for snapshots.
+     */
+    <T> void writeText(Path target, String header, List<T> items, Function<T, String> format) throws IOException {
+        Path tmp = temporary(target);
+        CRC32 crc = new CRC32();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new CheckedOutputStream(Files.newOutputStream(tmp), crc), StandardCharsets.UTF_8), READ_BUFFER)) {
+            out.write(header);
+            out.write('\n');
+            for (T item : items) {
+                String line = format.apply(item);
+                if (line == null) continue;
+                out.write(line);
+                out.write('\n');
+            }
+            out.flush();
+            out.write(String.format(Locale.ROOT, "%s%08x\n", CHECKSUM_PREFIX, crc.getValue()));
+        }
+        commit(tmp, target);
+    }
+
+    /** Forces {@code tmp} under an fsync policy, then renames it over {@code target}. */
+    private void commit(Path tmp, Path target) throws IOException {
+        if (durability.fsync) {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                force(ch);
+            }
+        }
+        metrics.snapshotBytes.addAndGet(Files.size(tmp));
+        replace(tmp, target);
+    }
+
+    /**
+     * Formats one task as a storage line, or returns {@code null} for unknown types.
+     */
+    static String encode(Task t) {
+        if (t == null) return null;
+        int done = t.isDone() ? 1 : 0;
+        if (t instanceof ToDo) {
+            return String.format("T | %d | %s", done, t.getDescription());
+        } else if (t instanceof Deadline) {
+            Deadline d = (Deadline) t;
+            return String.format("D | %d | %s | %s", done, d.getDescription(), d.getBy());
+        } else if (t instanceof Event) {
+            Event e = (Event) t;
+            return String.format("E | %d | %s | %s | %s", done, e.getDescription(), e.getFrom(), e.getTo());
+        }
+        return null;
+    }
+
+    /**
+     * Streams a snapshot through a reusable direct buffer, cutting lines and {@code |}
+     * fields by scanning bytes. Only the text fields a task keeps are decoded to Strings;
+     * no per-line String or regex match is created. The checksum is computed over the
+     * same bytes; files written before checksums existed carry no version line and are
+     * read unchecked.
+     *
+     * @param path  Snapshot to read.
+     * @param keyed Whether each line starts with a numeric key field, as in {@link Shards}.
+     * @param sink  Receives each well-formed task in file order, with its key (or -1).
+     * @throws IOException if the file cannot be read or fails its checksum.
+     */
+    static void readSnapshot(Path path, boolean keyed, ObjLongConsumer<Task> sink) throws IOException {
+        readSnapshot(path, keyed, true, sink);
+    }
+
+    /**
+     * Streams a snapshot as {@link #readSnapshot(Path, boolean, ObjLongConsumer)} does, skipping
+     * the checksum unless {@code checked}.
+     */
+    private static void readSnapshot(Path path, boolean keyed, boolean checked, ObjLongConsumer<Task> sink)
+            throws IOException {
+        SnapshotCheck check = new SnapshotCheck();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(READ_BUFFER);
+            byte[] scratch = new byte[256];
+            int[] starts = new int[MAX_FIELDS];
+            int[] ends = new int[MAX_FIELDS];
+            boolean eof = false;
+            while (!eof) {
+                eof = ch.read(buf) < 0;
+                buf.flip();
+                int lineStart = 0;
+                for (int i = 0; i < buf.limit(); i++) {
+                    if (buf.get(i) != '\n') continue;
+                    if (check.isData(buf, lineStart, i + 1)) {
+                        emit(buf, lineStart, i, keyed, sink, scratch, starts, ends);
+                    }
+                    lineStart = i + 1;
                 }
+                if (eof) {
+                    if (check.isData(buf, lineStart, buf.limit())) {
+                        emit(buf, lineStart, buf.limit(), keyed, sink, scratch, starts, ends);
+                    }
+                    break;
+                }
+                buf.position(lineStart);
+                buf.compact();
+                if (!buf.hasRemaining()) {
+                    // A single line fills the buffer: grow it so the line can complete.
+                    ByteBuffer bigger = ByteBuffer.allocateDirect(buf.capacity() * 2);
+                    buf.flip();
+                    bigger.put(buf);
+                    buf = bigger;
+                }
+            }
+        }
+        if (checked) check.verify(path);
+    }
+
+    /** Decodes one line, after its key field when {@code keyed}, and passes it on if well-formed. */
+    private static void emit(ByteBuffer buf, int lineStart, int lineEnd, boolean keyed, ObjLongConsumer<Task> sink,
+            byte[] scratch, int[] starts, int[] ends) {
+        long key = -1;
+        if (keyed) {
+            int bar = lineStart;
+            while (bar < lineEnd && buf.get(bar) != '|') bar++;
+            if (bar == lineEnd) return;
+            key = 0;
+            for (int i = lineStart; i < bar; i++) {
+                int c = buf.get(i) & 0xff;
+                if (c <= ' ') continue;
+                if (c < '0' || c > '9') return;
+                key = key * 10 + (c - '0');
             }
-            Files.write(file, lines, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (IOException ignored) { }
+            lineStart = bar + 1;
+        }
+        Task t = decode(buf, lineStart, lineEnd, scratch, starts, ends);
+        if (t != null) sink.accept(t, key);
+    }
+
+    /** Thrown when a text snapshot was read but does not match its checksum. */
+    private static final class ChecksumException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChecksumException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Checksums the lines of a text snapshot as they stream past and picks out the version
+     * line and footer, which are not task data.
+     */
+    private static final class SnapshotCheck {
+        private static final byte[] HEADER = SNAPSHOT_HEADER.getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] FOOTER = CHECKSUM_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+        private final CRC32 crc = new CRC32();
+        private boolean versioned;
+        private long footer = -1;
+        private boolean trailing;
+
+        /**
+         * Takes the line {@code buf[start, end)}, including its line break if any, and
+         * returns whether it holds task data.
+         */
+        boolean isData(ByteBuffer buf, int start, int end) {
+            if (footer >= 0) {
+                if (!isBlank(buf, start, end)) trailing = true;
+                return false;
+            }
+            if (startsWith(buf, start, end, FOOTER)) {
+                footer = parseHex(buf, start + FOOTER.length, end);
+                return false;
+            }
+            crc.update(buf.duplicate().limit(end).position(start));
+            if (startsWith(buf, start, end, HEADER)) {
+                versioned = true;
+                return false;
+            }
+            return true;
+        }
+
+        void verify(Path path) throws IOException {
+            if (versioned && (footer != crc.getValue() || trailing)) {
+                throw new ChecksumException(path.getFileName() + " failed its checksum");
+            }
+        }
+
+        private static boolean startsWith(ByteBuffer buf, int start, int end, byte[] prefix) {
+            if (end - start < prefix.length) return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (buf.get(start + i) != prefix[i]) return false;
+            }
+            return true;
+        }
+
+        private static boolean isBlank(ByteBuffer buf, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if ((buf.get(i) & 0xff) > ' ') return false;
+            }
+            return true;
+        }
+
+        /** Parses the hex checksum, or returns -2 (never a CRC-32) if it is malformed. */
+        private static long parseHex(ByteBuffer buf, int start, int end) {
+            long value = 0;
+            int digits = 0;
+            for (int i = start; i < end; i++) {
+                int c = buf.get(i) & 0xff;
+                if (c <= ' ') continue;
+                int digit = Character.digit(c, 16);
+                if (digit < 0 || ++digits > 8) return -2;
+                value = value << 4 | digit;
+            }
+            return digits == 0 ? -2 : value;
+        }
+    }
+
+    /**
+     * Parses one storage line, or returns {@code null} when it is blank or malformed.
+     */
+    static Task decode(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return decode(ByteBuffer.wrap(bytes), 0, bytes.length, new byte[bytes.length],
+                new int[MAX_FIELDS], new int[MAX_FIELDS]);
+    }
+
+    /**
+     * Parses the line in {@code buf[lineStart, lineEnd)} with the same rules as splitting on
+     * {@code \s*\|\s*}: fields are trimmed and trailing empty fields are dropped.
+     *
+     * @return The task, or {@code null} when the line is blank or malformed.
+     */
+    private static Task decode(ByteBuffer buf, int lineStart, int lineEnd, byte[] scratch,
+            int[] starts, int[] ends) {
+        int fields = 0;
+        int fieldStart = lineStart;
+        for (int i = lineStart; i <= lineEnd && fields < MAX_FIELDS; i++) {
+            if (i < lineEnd && buf.get(i) != '|') continue;
+            int s = fieldStart;
+            int e = i;
+            while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+            while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+            starts[fields] = s;
+            ends[fields] = e;
+            fields++;
+            fieldStart = i + 1;
+        }
+        while (fields > 0 && starts[fields - 1] == ends[fields - 1]) fields--;
+        if (fields < 3 || ends[0] - starts[0] != 1) return null;
+
+        boolean done = ends[1] - starts[1] == 1 && buf.get(starts[1]) == '1';
+        String desc = text(buf, starts[2], ends[2], scratch);
+        Task t;
+        switch (buf.get(starts[0])) {
+        case 'T':
+            t = new ToDo(desc);
+            break;
+        case 'D': {
+            LocalDate date = fields > 3 ? isoDate(buf, starts[3], ends[3]) : null;
+            if (date != null) {
+                t = new Deadline(desc, date);
+            } else {
+                t = new Deadline(desc, fields > 3 ? text(buf, starts[3], ends[3], scratch) : "");
+            }
+            break;
+        }
+        case 'E': {
+            String from = fields > 3 ? text(buf, starts[3], ends[3], scratch) : "";
+            String to   = fields > 4 ? text(buf, starts[4], ends[4], scratch) : "";
+            t = new Event(desc, from, to);
+            break;
+        }
+        default:
+            return null;
+        }
+        if (done) t.mark();
+        return t;
+    }
+
+    private static String text(ByteBuffer buf, int from, int to, byte[] scratch) {
+        int len = to - from;
+        byte[] bytes = len <= scratch.length ? scratch : new byte[len];
+        buf.get(from, bytes, 0, len);
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} field in place, or returns {@code null} so the caller
+     * keeps the raw text as a legacy deadline.
+     */
+    private static LocalDate isoDate(ByteBuffer buf, int from, int to) {
+        if (to - from != 10 || buf.get(from + 4) != '-' || buf.get(from + 7) != '-') return null;
+        int year = digits(buf, from, 4);
+        int month = digits(buf, from + 5, 2);
+        int day = digits(buf, from + 8, 2);
+        if (year < 0 || month < 0 || day < 0) return null;
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int digits(ByteBuffer buf, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            byte b = buf.get(i);
+            if (b < '0' || b > '9') return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * When journal records reach the disk: immediately ({@code sync}), or queued and
+     * written in batches once {@code everyOps} records are waiting or every
+     * {@code everyMillis} milliseconds. Queued records are always written on {@link #close()}.
+     * With {@code fsync}, every journal write and snapshot is also forced to the device
+     * ({@link FileChannel#force}) rather than left to the OS cache.
+     */
+    public static final class Durability {
+        final int everyOps;
+        final long everyMillis;
+        final boolean fsync;
+
+        private Durability(int everyOps, long everyMillis, boolean fsync) {
+            this.everyOps = everyOps;
+            this.everyMillis = everyMillis;
+            this.fsync = fsync;
+        }
+
+        public static Durability sync() { return new Durability(0, 0, false); }
+
+        public static Durability everyOps(int n) { return new Durability(Math.max(1, n), 0, false); }
+
+        public static Durability everyMillis(long ms) { return new Durability(0, Math.max(1, ms), false); }
+
+        /** Returns the same policy, additionally forcing each write to the device. */
+        public Durability withFsync() { return new Durability(everyOps, everyMillis, true); }
+
+        /**
+         * Parses {@code sync}, {@code ops:N} or {@code ms:T}, optionally followed by
+         * {@code ,fsync}; anything else means {@code sync}.
+         */
+        public static Durability parse(String spec) {
+            if (spec == null) return sync();
+            boolean fsync = spec.endsWith(",fsync");
+            if (fsync) spec = spec.substring(0, spec.length() - ",fsync".length());
+            Durability policy = sync();
+            try {
+                if (spec.startsWith("ops:")) policy = everyOps(Integer.parseInt(spec.substring(4)));
+                if (spec.startsWith("ms:")) policy = everyMillis(Long.parseLong(spec.substring(3)));
+            } catch (NumberFormatException ignored) { }
+            return fsync ? policy.withFsync() : policy;
+        }
+
+        boolean isSync() { return everyOps == 0 && everyMillis == 0; }
     }
 }
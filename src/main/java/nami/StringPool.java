@@ -0,0 +1,77 @@
+package nami;
+
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * Bounded interning pool for the strings tasks keep: descriptions, deadline text and event
+ * times. Saves and typed commands repeat the same few strings many times, so handing every
+ * task one shared copy keeps only the distinct ones on the heap.
+ * <p>
+ * The pool is a fixed table of weak references, two candidate buckets per string. A miss
+ * takes over an empty or cleared bucket, or else evicts, so the pool never grows and never
+ * keeps a string alive that no task uses. Safe to call from any thread.
+ */
+final class StringPool {
+    /** Pool used by the task constructors. */
+    static final StringPool SHARED = new StringPool(1 << 16);
+
+    /** Longer strings are rarely repeated and are passed through untouched. */
+    private static final int MAX_LENGTH = 256;
+
+    private final AtomicReferenceArray<WeakReference<String>> buckets;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity Number of buckets, a power of two.
+     */
+    StringPool(int capacity) {
+        this.buckets = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the pooled copy of {@code s}, pooling {@code s} itself if there is none.
+     */
+    String intern(String s) {
+        if (s == null || s.length() > MAX_LENGTH) return s;
+        int h = s.hashCode();
+        int first = (h ^ (h >>> 16)) & mask;
+        int second = (first + 1) & mask;
+        String cached = get(first);
+        if (cached == null || !cached.equals(s)) {
+            String other = get(second);
+            if (other != null && other.equals(s)) {
+                hits.increment();
+                return other;
+            }
+            buckets.set(cached == null || other != null ? first : second, new WeakReference<>(s));
+            misses.increment();
+            return s;
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Describes lookups so far, the share answered from the pool, and how full it is.
+     */
+    String describe() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        int live = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (get(i) != null) live++;
+        }
+        return String.format(Locale.ROOT, "%d lookups, %.1f%% hits, %d of %d strings pooled",
+                total, total == 0 ? 0.0 : 100.0 * hit / total, live, mask + 1);
+    }
+
+    private String get(int bucket) {
+        WeakReference<String> ref = buckets.get(bucket);
+        return ref == null ? null : ref.get();
+    }
+}
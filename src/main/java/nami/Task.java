@@ -1,22 +1,44 @@
 package nami;
 /**
  * Base type for all tasks, tracking description and completion state.
+ * The rendered list line is cached until the task's state changes.
+ * Descriptions and other stored text go through {@link StringPool#SHARED}, so tasks
+ * loaded or typed with the same text share one copy.
  */
 public abstract class Task {
     protected final String description;
     protected boolean isDone;
+    private String rendered; // cached render(), cleared on mark/unmark
 
     public Task(String description) {
-        this.description = description;
+        this.description = StringPool.SHARED.intern(description);
         this.isDone = false;
     }
 
-    public void mark() { this.isDone = true; }
-    public void unmark() { this.isDone = false; }
+    public void mark() {
+        this.isDone = true;
+        this.rendered = null;
+    }
+
+    public void unmark() {
+        this.isDone = false;
+        this.rendered = null;
+    }
+
     public boolean isDone() { return isDone; }
     public String getStatusIcon() { return isDone ? "X" : " "; }
     public String getDescription() { return description; }
 
     @Override
-    public abstract String toString(); // subclasses format [T]/[D]/[E]
+    public String toString() {
+        String line = rendered;
+        if (line == null) {
+            line = render();
+            rendered = line;
+        }
+        return line;
+    }
+
+    /** Formats the task as shown in lists; subclasses format [T]/[D]/[E]. */
+    protected abstract String render();
 }
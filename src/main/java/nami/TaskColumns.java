@@ -0,0 +1,269 @@
+package nami;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+/**
+ * Column-per-field {@link TaskSlots.Store}, chosen with {@code -Dnami.store=columns}.
+ * Instead of one object per task it keeps, per slot, a type byte, a done bit, an epoch day
+ * and references into a shared pool of deduplicated strings, and builds a {@link Task}
+ * view whenever a slot is read. Views are throwaway copies: done state only changes
+ * through {@link #setDone}, which is why {@link TaskList#setDone} exists.
+ */
+final class TaskColumns implements TaskSlots.Store {
+    private static final byte EMPTY = 0;
+
+    private final Pool pool = new Pool();
+    private byte[] types;        // 'T', 'D', 'E', or EMPTY
+    private long[] done;         // one bit per slot
+    private int[] days;          // deadline epoch day, or NO_DAY
+    private int[] descriptions;  // pool codes
+    private int[] firsts;        // undated deadline text or event start, pool code or -1
+    private int[] seconds;       // event end, pool code or -1
+
+    TaskColumns(int capacity) {
+        types = new byte[capacity];
+        done = new long[(capacity + 63) >>> 6];
+        days = new int[capacity];
+        descriptions = new int[capacity];
+        firsts = new int[capacity];
+        seconds = new int[capacity];
+    }
+
+    @Override
+    public Task get(int slot) {
+        String desc = pool.text(descriptions[slot]);
+        Task t;
+        switch (types[slot]) {
+        case 'T':
+            t = new ToDo(desc);
+            break;
+        case 'D':
+            t = days[slot] != TaskSlots.NO_DAY
+                    ? new Deadline(desc, LocalDate.ofEpochDay(days[slot]))
+                    : new Deadline(desc, pool.text(firsts[slot]));
+            break;
+        default:
+            t = new Event(desc, pool.text(firsts[slot]), pool.text(seconds[slot]));
+            break;
+        }
+        if (isDone(slot)) t.mark();
+        return t;
+    }
+
+    @Override
+    public void set(int slot, Task t) {
+        clear(slot);
+        int first = -1;
+        int second = -1;
+        int day = TaskSlots.NO_DAY;
+        byte type;
+        if (t instanceof ToDo) {
+            type = 'T';
+        } else if (t instanceof Deadline) {
+            type = 'D';
+            LocalDate by = ((Deadline) t).getByDate();
+            if (by != null) {
+                day = (int) by.toEpochDay();
+            } else {
+                first = pool.intern(((Deadline) t).getBy());
+            }
+        } else if (t instanceof Event) {
+            type = 'E';
+            first = pool.intern(((Event) t).getFrom());
+            second = pool.intern(((Event) t).getTo());
+        } else {
+            throw new IllegalArgumentException("Unknown task type: " + t.getClass().getName());
+        }
+        types[slot] = type;
+        days[slot] = day;
+        descriptions[slot] = pool.intern(t.getDescription());
+        firsts[slot] = first;
+        seconds[slot] = second;
+        setDone(slot, t.isDone());
+    }
+
+    @Override
+    public void clear(int slot) {
+        if (types[slot] == EMPTY) return;
+        pool.release(descriptions[slot]);
+        pool.release(firsts[slot]);
+        pool.release(seconds[slot]);
+        types[slot] = EMPTY;
+        setDone(slot, false);
+    }
+
+    @Override
+    public void move(int from, int to) {
+        if (from == to) return;
+        types[to] = types[from];
+        days[to] = days[from];
+        descriptions[to] = descriptions[from];
+        firsts[to] = firsts[from];
+        seconds[to] = seconds[from];
+        setDone(to, isDone(from));
+        types[from] = EMPTY; // its pool references now belong to the new slot
+        setDone(from, false);
+    }
+
+    @Override
+    public void resize(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        done = Arrays.copyOf(done, (capacity + 63) >>> 6);
+        days = Arrays.copyOf(days, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        firsts = Arrays.copyOf(firsts, capacity);
+        seconds = Arrays.copyOf(seconds, capacity);
+    }
+
+    @Override
+    public boolean isDone(int slot) {
+        return (done[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    @Override
+    public void setDone(int slot, boolean isDone) {
+        if (isDone) {
+            done[slot >>> 6] |= 1L << slot;
+        } else {
+            done[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    @Override
+    public String description(int slot) { return pool.text(descriptions[slot]); }
+
+    @Override
+    public char type(int slot) { return (char) types[slot]; }
+
+    @Override
+    public int dueDay(int slot) { return types[slot] == 'D' ? days[slot] : TaskSlots.NO_DAY; }
+
+    /** Counts completed tasks in slots {@code [0, used)}; emptied slots have no done bit. */
+    int countDone(int used) {
+        int count = 0;
+        int words = used >>> 6;
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(done[i]);
+        }
+        if ((used & 63) != 0) count += Long.bitCount(done[words] & ((1L << used) - 1));
+        return count;
+    }
+
+    /** Counts tasks of one type code in slots {@code [0, used)}. */
+    int countType(int used, char type) {
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (types[slot] == type) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Collects {@code day << 32 | slot} for deadlines in slots {@code [0, used)} due between
+     * two epoch days, inclusive, in slot order.
+     *
+     * @param undoneOnly Whether to skip completed deadlines.
+     */
+    long[] dueKeys(int used, int fromDay, int toDay, boolean undoneOnly) {
+        long[] keys = new long[16];
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            int day = days[slot];
+            if (types[slot] != 'D' || day < fromDay || day > toDay || day == TaskSlots.NO_DAY) continue;
+            if (undoneOnly && isDone(slot)) continue;
+            if (count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+            keys[count++] = (long) day << 32 | slot;
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    /**
+     * Deduplicated strings with reference counts, addressed by int codes. Lookup is an
+     * open-addressed table of codes, so no boxing per entry; a code is reused once its
+     * last reference is released.
+     */
+    private static final class Pool {
+        private String[] texts = new String[16];
+        private int[] refs = new int[16];
+        private int[] table = new int[32]; // code + 1, or 0 for an empty bucket
+        private int[] free = new int[16];
+        private int freeCount;
+        private int used;  // codes handed out, live or free
+        private int live;
+
+        /** Returns the code for {@code s}, adding a reference; {@code null} maps to -1. */
+        int intern(String s) {
+            if (s == null) return -1;
+            int mask = table.length - 1;
+            int bucket = home(s, mask);
+            while (table[bucket] != 0) {
+                int code = table[bucket] - 1;
+                if (texts[code].equals(s)) {
+                    refs[code]++;
+                    return code;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            int code = freeCount > 0 ? free[--freeCount] : used++;
+            if (code == texts.length) {
+                texts = Arrays.copyOf(texts, code * 2);
+                refs = Arrays.copyOf(refs, code * 2);
+            }
+            texts[code] = s;
+            refs[code] = 1;
+            table[bucket] = code + 1;
+            if (++live * 2 > table.length) rehash();
+            return code;
+        }
+
+        String text(int code) {
+            return code < 0 ? null : texts[code];
+        }
+
+        void release(int code) {
+            if (code < 0 || --refs[code] > 0) return;
+            unlink(code);
+            texts[code] = null;
+            live--;
+            if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = code;
+        }
+
+        /** Removes {@code code} from the table, shifting later probes back over the gap. */
+        private void unlink(int code) {
+            int mask = table.length - 1;
+            int gap = home(texts[code], mask);
+            while (table[gap] != code + 1) gap = (gap + 1) & mask;
+            int i = gap;
+            while (true) {
+                i = (i + 1) & mask;
+                if (table[i] == 0) break;
+                int home = home(texts[table[i] - 1], mask);
+                // move the entry back unless its home lies cyclically in (gap, i]
+                boolean stays = gap <= i ? (home > gap && home <= i) : (home > gap || home <= i);
+                if (!stays) {
+                    table[gap] = table[i];
+                    gap = i;
+                }
+            }
+            table[gap] = 0;
+        }
+
+        private void rehash() {
+            int[] grown = new int[table.length * 2];
+            int mask = grown.length - 1;
+            for (int entry : table) {
+                if (entry == 0) continue;
+                int bucket = home(texts[entry - 1], mask);
+                while (grown[bucket] != 0) bucket = (bucket + 1) & mask;
+                grown[bucket] = entry;
+            }
+            table = grown;
+        }
+
+        private static int home(String s, int mask) {
+            int h = s.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
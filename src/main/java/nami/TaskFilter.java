@@ -0,0 +1,49 @@
+package nami;
+/**
+ * What {@code find} looks for: a keyword anywhere in the description, ignoring case, plus
+ * an optional task type and done state. The keyword is compared in place, so checking a
+ * description allocates nothing.
+ */
+final class TaskFilter {
+    final String keyword; // "" matches every description
+    final char type;      // 'T', 'D' or 'E', or 0 for any type
+    final Boolean done;   // null for either state
+
+    private final char first;      // keyword.charAt(0), for a quick check before regionMatches
+    private final char firstUpper;
+    private final char firstLower;
+
+    TaskFilter(String keyword, char type, Boolean done) {
+        this.keyword = keyword;
+        this.type = type;
+        this.done = done;
+        this.first = keyword.isEmpty() ? 0 : keyword.charAt(0);
+        this.firstUpper = Character.toUpperCase(first);
+        this.firstLower = Character.toLowerCase(firstUpper);
+    }
+
+    /** Returns whether {@code t} has the wanted type and done state and contains the keyword. */
+    boolean accepts(Task t) {
+        if (type != 0 && type != (t instanceof ToDo ? 'T' : t instanceof Deadline ? 'D' : 'E')) return false;
+        if (done != null && t.isDone() != done) return false;
+        return matches(t.getDescription());
+    }
+
+    /**
+     * Returns whether {@code description} contains the keyword, using the same case folding
+     * as {@link String#regionMatches(boolean, int, String, int, int)}.
+     */
+    boolean matches(String description) {
+        int n = keyword.length();
+        if (n == 0) return true;
+        for (int i = 0, last = description.length() - n; i <= last; i++) {
+            char c = description.charAt(i);
+            if (c != first) {
+                char upper = Character.toUpperCase(c);
+                if (upper != firstUpper && Character.toLowerCase(upper) != firstLower) continue;
+            }
+            if (description.regionMatches(true, i, keyword, 0, n)) return true;
+        }
+        return false;
+    }
+}
@@ -1,34 +1,197 @@
 package nami;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.ObjLongConsumer;
 /**
  * In-memory list of tasks with basic operations and search.
+ * Not synchronised: readers may run concurrently, but changes must be exclusive.
+ * Tasks live in {@link TaskSlots}, so deleting is O(log n) and each task keeps a stable id
+ * ({@link #idAt}) for as long as the list is in memory.
+ * Descriptions are kept in a {@link KeywordIndex} so {@code find} does not scan the list,
+ * deadlines in a {@link DueIndex} for date-range queries, events with parsed times in
+ * an {@link IntervalIndex} for overlap queries and description words in a {@link FuzzyIndex}
+ * for typo-tolerant search. Each index is built in bulk
+ * on its first query so loading stays cheap, then kept up to date on add/remove.
+ * Once {@link #remindWith} is called, every change also updates the {@link Reminders}.
+ * <p>
+ * A columnar list keeps tasks in {@link TaskColumns} rather than as objects, so each read
+ * returns a fresh view: change done state with {@link #setDone}, not {@link Task#mark}.
+ * Its deadline queries and counts are plain scans over the columns instead of indexes.
  */
 public class TaskList {
-    private final List<Task> tasks;
+    private final TaskSlots tasks;
+    private volatile KeywordIndex index; // null until the first search
+    private volatile DueIndex dueIndex;  // null until the first due query
+    private volatile IntervalIndex intervals; // null until the first event query
+    private volatile FuzzyIndex fuzzy;        // null until the first fuzzy search
+    private volatile Reminders reminders;     // null unless reminders are on
 
     public TaskList() {
-        this.tasks = new ArrayList<>();
+        this(false);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param columnar Whether to keep tasks in primitive columns instead of task objects.
+     */
+    TaskList(boolean columnar) {
+        this.tasks = new TaskSlots(columnar);
     }
 
     public TaskList(List<Task> initial) {
-        this.tasks = new ArrayList<>(initial);
+        this();
+        for (Task t : initial) {
+            tasks.append(t);
+        }
     }
 
     /**
-     * Exposes the backing list so callers can iterate or persist tasks.
-     * Mutating the returned list updates the underlying task store directly.
+     * Creates a lazily decoded list whose {@code dated} hint tells from a row, without decoding
+     * it, whether it may hold an unfinished deadline or event.
      */
-    public List<Task> asList() { return tasks; }
+    TaskList(int count, IntFunction<Task> loader, IntPredicate dated, boolean columnar) {
+        this.tasks = new TaskSlots(count, loader, dated, columnar);
+    }
+
+    /**
+     * Exposes a read-only view of the tasks so callers can iterate or persist them.
+     * Changes must go through {@link #add} and {@link #remove} to keep the index in step.
+     */
+    public List<Task> asList() { return Collections.unmodifiableList(tasks); }
 
     public int size() { return tasks.size(); }
 
     public Task get(int idx) { return tasks.get(idx); }
 
-    public void add(Task t) { tasks.add(t); }
+    /** Returns the stable id of the task at {@code idx}. */
+    public long idAt(int idx) { return tasks.idAt(idx); }
+
+    /** Returns the ids of every task in list order. */
+    long[] ids() { return tasks.ids(); }
+
+    /** Returns the task with the given id, or {@code null} if it has been deleted. */
+    public Task byId(long id) { return tasks.byId(id); }
+
+    /** Returns the 0-based position of the task with the given id, or -1 if it has been deleted. */
+    public int positionOf(long id) { return tasks.positionOf(id); }
+
+    /**
+     * Marks or unmarks the task at {@code idx}.
+     *
+     * @return The task in its new state.
+     */
+    public Task setDone(int idx, boolean done) {
+        Task t = tasks.setDone(idx, done);
+        DueIndex due = dueIndex;
+        if (due != null) due.setDone(tasks.idAt(idx), t, done);
+        Reminders r = reminders;
+        if (r != null) {
+            if (done) {
+                r.cancel(tasks.idAt(idx));
+            } else {
+                r.register(tasks.idAt(idx), t);
+            }
+        }
+        return t;
+    }
+
+    public boolean isDone(int idx) { return tasks.isDone(idx); }
 
-    public Task remove(int idx) { return tasks.remove(idx); }
+    /** Returns the 0-based positions of completed tasks in ascending order. */
+    public int[] donePositions() { return tasks.donePositions(); }
+
+    public int countDone() { return tasks.count((char) 0, true); }
+
+    /**
+     * Counts tasks of one storage type: {@code 'T'}, {@code 'D'} or {@code 'E'}.
+     */
+    public int countOfType(char type) { return tasks.count(type, false); }
+
+    public void add(Task t) {
+        add(t, -1);
+    }
+
+    /**
+     * Appends {@code t} under a saved id, so ids stay those of the save it is loaded from;
+     * an id that does not sort after the ones so far is replaced by the next free one.
+     */
+    void add(Task t, long savedId) {
+        long id = tasks.append(t, savedId);
+        if (index != null) index.add(id, t);
+        if (dueIndex != null) dueIndex.add(id, t);
+        if (intervals != null) intervals.add(id, t);
+        if (fuzzy != null) fuzzy.add(id, t);
+        if (reminders != null) reminders.register(id, t);
+    }
+
+    /**
+     * Puts a removed task back under the id it had, at the position that id sorts to,
+     * which is where it was unless its neighbours have changed since.
+     *
+     * @return The task's 0-based position.
+     */
+    public int restore(long id, Task t) {
+        int idx = tasks.restore(id, t);
+        if (index != null) index.restore(id, t);
+        if (dueIndex != null) dueIndex.add(id, t);
+        if (intervals != null) intervals.add(id, t);
+        if (fuzzy != null) fuzzy.restore(id, t);
+        if (reminders != null) reminders.register(id, t);
+        return idx;
+    }
+
+    /**
+     * Inserts {@code t} at {@code idx} while replaying a journal. Task ids may change, so
+     * this drops any index built so far. Loading is over by the time {@link #remindWith} is called.
+     */
+    void insert(int idx, Task t) {
+        tasks.insert(idx, t);
+        index = null;
+        dueIndex = null;
+        intervals = null;
+        fuzzy = null;
+    }
+
+    public Task remove(int idx) {
+        long id = tasks.idAt(idx);
+        Task removed = tasks.remove(idx);
+        KeywordIndex built = index;
+        if (built != null) {
+            built.noteRemoved();
+            if (built.isStale()) index = null; // rebuilt without the dead ids on the next search
+        }
+        FuzzyIndex words = fuzzy;
+        if (words != null) {
+            words.noteRemoved();
+            if (words.isStale()) fuzzy = null;
+        }
+        if (dueIndex != null) dueIndex.remove(id, removed);
+        if (intervals != null) intervals.remove(id, removed);
+        if (reminders != null) reminders.cancel(id);
+        return removed;
+    }
+
+    /**
+     * Registers every task with {@code r} in bulk, then keeps it up to date on each change.
+     */
+    void remindWith(Reminders r) {
+        r.rebuild(this);
+        reminders = r;
+    }
+
+    /** Visits every unfinished deadline and event with its id, in list order. */
+    void forEachDated(ObjLongConsumer<Task> visitor) { tasks.forEachDated(visitor); }
 
     /**
      * Returns new list containing tasks whose description includes the keyword (case-insensitive).
@@ -37,13 +200,218 @@ public class TaskList {
      * @return Matching tasks in encounter order.
      */
     public List<Task> findByKeyword(String keyword) {
-        String needle = keyword.toLowerCase();
-        List<Task> out = new ArrayList<>();
-        for (Task t : tasks) {
-            if (t.getDescription().toLowerCase().contains(needle)) {
-                out.add(t);
+        return find(keyword, (char) 0, null);
+    }
+
+    /**
+     * Returns tasks matching every given criterion, in encounter order. Keywords of three or
+     * more characters narrow the candidates through the trigram index; otherwise every task
+     * is checked. Large candidate sets are checked in parallel.
+     *
+     * @param keyword Text the description must contain, ignoring case, or "" for any.
+     * @param type    Storage type code {@code 'T'}, {@code 'D'} or {@code 'E'}, or 0 for any.
+     * @param done    Required done state, or {@code null} for either.
+     */
+    public List<Task> find(String keyword, char type, Boolean done) {
+        TaskFilter filter = new TaskFilter(keyword, type, done);
+        KeywordIndex.Postings candidates = keyword.isEmpty() ? null : keywordIndex().candidates(keyword.toLowerCase());
+        if (candidates == null) return tasks.select(filter, null, 0);
+        return tasks.select(filter, candidates.ids, candidates.size);
+    }
+
+    /**
+     * Returns up to {@code limit} tasks whose description words come closest to the words of
+     * {@code query}, best first: most query words matched, then fewest edits in total, then
+     * list order. A query word matches a description word within {@link #allowedEdits} edits,
+     * found through the {@link FuzzyIndex} rather than by scanning the list.
+     *
+     * @param type Storage type code {@code 'T'}, {@code 'D'} or {@code 'E'}, or 0 for any.
+     * @param done Required done state, or {@code null} for either.
+     * @param limit Most tasks to return; none if not positive.
+     */
+    public List<Task> findFuzzy(String query, char type, Boolean done, int limit) {
+        List<String> needles = FuzzyIndex.words(query);
+        FuzzyIndex index = fuzzyIndex();
+        Map<Long, int[]> edits = new HashMap<>(); // task id -> fewest edits per query word, or -1
+        for (int q = 0; q < needles.size(); q++) {
+            String needle = needles.get(q);
+            for (FuzzyIndex.Hit hit : index.near(needle, allowedEdits(needle.length()))) {
+                for (int i = 0; i < hit.word.size; i++) {
+                    int[] best = edits.computeIfAbsent(hit.word.ids[i], k -> newEdits(needles.size()));
+                    if (best[q] < 0 || hit.distance < best[q]) best[q] = hit.distance;
+                }
             }
         }
+        TaskFilter filter = new TaskFilter("", type, done);
+        int capacity = Math.max(0, Math.min(limit, 1024)) + 1;
+        PriorityQueue<Ranked> top = new PriorityQueue<>(capacity, Collections.reverseOrder());
+        for (Map.Entry<Long, int[]> e : edits.entrySet()) {
+            Task t = tasks.byId(e.getKey());
+            if (t == null || !filter.accepts(t)) continue; // removed since the index was built
+            top.add(new Ranked(e.getKey(), t, e.getValue()));
+            if (top.size() > limit) top.poll();
+        }
+        List<Ranked> ranked = new ArrayList<>(top);
+        Collections.sort(ranked);
+        List<Task> out = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            out.add(r.task);
+        }
         return out;
     }
+
+    /** Edits a query word of the given length may be away from a word it matches. */
+    static int allowedEdits(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    private static int[] newEdits(int words) {
+        int[] edits = new int[words];
+        Arrays.fill(edits, -1);
+        return edits;
+    }
+
+    /** A fuzzy match, ordered best first. */
+    private static final class Ranked implements Comparable<Ranked> {
+        final long id;
+        final Task task;
+        final int matched;
+        final int edits;
+
+        Ranked(long id, Task task, int[] perWord) {
+            this.id = id;
+            this.task = task;
+            int m = 0;
+            int sum = 0;
+            for (int d : perWord) {
+                if (d < 0) continue;
+                m++;
+                sum += d;
+            }
+            this.matched = m;
+            this.edits = sum;
+        }
+
+        @Override
+        public int compareTo(Ranked o) {
+            if (matched != o.matched) return Integer.compare(o.matched, matched);
+            if (edits != o.edits) return Integer.compare(edits, o.edits);
+            return Long.compare(id, o.id);
+        }
+    }
+
+    /**
+     * Returns deadlines due between two dates (inclusive), ordered by date and then list order.
+     *
+     * @param from First day, or {@code null} for no lower bound.
+     * @param to   Last day, or {@code null} for no upper bound.
+     */
+    public List<Task> dueBetween(LocalDate from, LocalDate to) {
+        if (tasks.isColumnar()) {
+            return tasks.dueBetween(from == null ? Integer.MIN_VALUE + 1 : (int) from.toEpochDay(),
+                    to == null ? Integer.MAX_VALUE : (int) to.toEpochDay(), false, 0);
+        }
+        return dueIndex().between(from, to);
+    }
+
+    /**
+     * Returns up to {@code limit} unfinished deadlines due on or after {@code from}, soonest first.
+     */
+    public List<Task> nextDue(LocalDate from, int limit) {
+        if (tasks.isColumnar()) return tasks.dueBetween((int) from.toEpochDay(), Integer.MAX_VALUE, true, limit);
+        return dueIndex().next(from, limit);
+    }
+
+    /**
+     * Counts legacy deadlines whose due text is not a date, which date queries cannot include.
+     */
+    public int undatedDeadlines() {
+        if (tasks.isColumnar()) return tasks.undatedDeadlines();
+        return dueIndex().undatedCount();
+    }
+
+    /**
+     * Returns events whose parsed time range overlaps {@code [from, to]}, both ends
+     * inclusive, ordered by start and then list order.
+     */
+    public List<Task> eventsBetween(LocalDateTime from, LocalDateTime to) {
+        long[] ids = intervalIndex().overlapping(from, to);
+        List<Task> out = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            out.add(tasks.byId(id));
+        }
+        return out;
+    }
+
+    /**
+     * Counts events with free-form times, which event queries cannot include.
+     */
+    public int unstructuredEvents() {
+        return intervalIndex().unstructuredCount();
+    }
+
+    /**
+     * Describes the keyword index size and estimated memory overhead.
+     */
+    public String describeIndex() {
+        String keywords = index == null ? "keyword index not built yet" : index.describe();
+        FuzzyIndex words = fuzzy;
+        return words == null ? keywords : keywords + "; " + words.wordCount() + " words for fuzzy search";
+    }
+
+    /**
+     * Returns the keyword index, building it on first use. Concurrent readers may race here,
+     * so the build is synchronised; changes to the list are expected to be exclusive.
+     */
+    private KeywordIndex keywordIndex() {
+        KeywordIndex built = index;
+        if (built != null) return built;
+        synchronized (this) {
+            if (index == null) {
+                KeywordIndex fresh = new KeywordIndex();
+                tasks.forEachWithId((t, id) -> fresh.add(id, t));
+                index = fresh;
+            }
+            return index;
+        }
+    }
+
+    private DueIndex dueIndex() {
+        DueIndex built = dueIndex;
+        if (built != null) return built;
+        synchronized (this) {
+            if (dueIndex == null) {
+                DueIndex fresh = new DueIndex();
+                tasks.forEachWithId((t, id) -> fresh.add(id, t));
+                dueIndex = fresh;
+            }
+            return dueIndex;
+        }
+    }
+
+    private FuzzyIndex fuzzyIndex() {
+        FuzzyIndex built = fuzzy;
+        if (built != null) return built;
+        synchronized (this) {
+            if (fuzzy == null) {
+                FuzzyIndex fresh = new FuzzyIndex();
+                tasks.forEachWithId((t, id) -> fresh.add(id, t));
+                fuzzy = fresh;
+            }
+            return fuzzy;
+        }
+    }
+
+    private IntervalIndex intervalIndex() {
+        IntervalIndex built = intervals;
+        if (built != null) return built;
+        synchronized (this) {
+            if (intervals == null) {
+                IntervalIndex fresh = new IntervalIndex();
+                tasks.forEachWithId((t, id) -> fresh.add(id, t));
+                intervals = fresh;
+            }
+            return intervals;
+        }
+    }
 }
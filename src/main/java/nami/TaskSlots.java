@@ -0,0 +1,718 @@
+package nami;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.ObjLongConsumer;
+/**
+ * Backing list for {@link TaskList}. Deleting leaves a tombstone in its slot instead of
+ * shifting later tasks, and a Fenwick tree over the live slots maps a list position to its
+ * slot in O(log n). Tombstones are squeezed out once they make up half of the slots.
+ * <p>
+ * Every task gets an id when it enters the list. Ids never change while the list is in
+ * memory and increase in list order, so an id finds its slot by binary search. A removed
+ * task can be put back under its old id ({@link #restore}), usually by reviving its
+ * tombstone.
+ * <p>
+ * Tasks loaded from a snapshot can be decoded only when first read: such a slot remembers
+ * its source row until then. Access is synchronised so concurrent readers always
+ * materialise a row into a single shared task.
+ * <p>
+ * What a slot holds is up to its {@link Store}: by default one {@link Task} object each, or
+ * primitive columns ({@link TaskColumns}) that hand out a fresh view per read. Done state
+ * therefore changes through {@link #setDone}, and the counting and date scans below run
+ * on the store directly.
+ */
+class TaskSlots extends AbstractList<Task> implements RandomAccess {
+    private static final int DEAD = -2;     // rows[] marker for a deleted slot
+    private static final int LOADED = -1;   // rows[] marker for a slot holding its task
+    private static final int MIN_COMPACT = 64;
+    private static final int PARALLEL_THRESHOLD = 1 << 15; // slots to check before searching in parallel
+    private static final int SCAN_CHUNK = 1 << 13;         // slots each fork-join task checks
+    /** {@link Store#dueDay} of a slot that is not a dated deadline. */
+    static final int NO_DAY = Integer.MIN_VALUE;
+
+    private final IntFunction<Task> loader;
+    private final IntPredicate dated; // whether a row still to decode may be an unfinished dated task
+    private final Store store;
+    private final TaskColumns columns; // the store when columnar, for its primitive scans
+    private int[] rows;   // source row, LOADED or DEAD per slot
+    private long[] ids;
+    private int[] tree;   // Fenwick tree of live counts, 1-based
+    private int used;     // slots in use, live or dead
+    private int size;     // live slots
+    private long nextId;
+    private boolean decodedAll; // no slot still waits for the loader
+
+    /**
+     * Holds the contents of each slot. Slots are addressed by index and only ever read
+     * after being {@link #set}.
+     */
+    interface Store {
+        Task get(int slot);
+
+        void set(int slot, Task t);
+
+        /** Empties a slot whose task has been removed. */
+        void clear(int slot);
+
+        /** Moves a slot's task to an empty slot. */
+        void move(int from, int to);
+
+        void resize(int capacity);
+
+        boolean isDone(int slot);
+
+        void setDone(int slot, boolean done);
+
+        String description(int slot);
+
+        /** Returns the storage type code, {@code 'T'}, {@code 'D'} or {@code 'E'}. */
+        char type(int slot);
+
+        /** Returns the epoch day a deadline is due, or {@link #NO_DAY}. */
+        int dueDay(int slot);
+    }
+
+    TaskSlots(boolean columnar) {
+        this(0, null, null, columnar);
+    }
+
+    /**
+     * Creates a list of {@code count} tasks that {@code loader} decodes from their row on
+     * first read. Their ids are their rows.
+     *
+     * @param dated    Tells from a row, without decoding it, whether it may hold an unfinished
+     *                 deadline or event, or {@code null} to decode every row for {@link #forEachDated}.
+     * @param columnar Whether to keep tasks in {@link TaskColumns} instead of as objects.
+     */
+    TaskSlots(int count, IntFunction<Task> loader, IntPredicate dated, boolean columnar) {
+        this.loader = loader;
+        this.dated = dated;
+        int capacity = Math.max(count, 10);
+        this.columns = columnar ? new TaskColumns(capacity) : null;
+        this.store = columnar ? columns : new ObjectStore(capacity);
+        this.rows = new int[capacity];
+        this.ids = new long[capacity];
+        for (int i = 0; i < count; i++) {
+            rows[i] = i;
+            ids[i] = i;
+        }
+        this.used = count;
+        this.size = count;
+        this.nextId = count;
+        this.tree = new int[capacity + 1];
+        rebuildTree();
+    }
+
+    @Override
+    public synchronized Task get(int index) {
+        checkIndex(index, size);
+        return load(slotAt(index));
+    }
+
+    @Override
+    public synchronized int size() { return size; }
+
+    @Override
+    public synchronized Task set(int index, Task t) {
+        int slot = slotAt(checkIndex(index, size));
+        Task old = load(slot);
+        store.set(slot, t);
+        return old;
+    }
+
+    /** Appends {@code t} and returns its new id. */
+    synchronized long append(Task t) {
+        return append(t, nextId);
+    }
+
+    /**
+     * Appends {@code t} under {@code id}, or under the next free id if {@code id} would not
+     * sort after every id so far, and returns the id used.
+     */
+    synchronized long append(Task t, long id) {
+        if (used == rows.length) grow();
+        store.set(used, t);
+        rows[used] = LOADED;
+        ids[used] = Math.max(id, nextId);
+        nextId = ids[used] + 1;
+        bump(used, 1);
+        used++;
+        size++;
+        modCount++;
+        return ids[used - 1];
+    }
+
+    /**
+     * Puts {@code t} back under {@code id}, the id it had before it was removed, and returns
+     * its position. The task's tombstone, or one next to where it belongs, is revived in
+     * O(log n); only once compaction has squeezed those out are later slots shifted up.
+     */
+    synchronized int restore(long id, Task t) {
+        int found = Arrays.binarySearch(ids, 0, used, id);
+        if (found >= 0 && rows[found] != DEAD) {
+            throw new IllegalStateException("Task id " + id + " is already in the list");
+        }
+        int slot = found;
+        if (slot < 0) {
+            int at = -found - 1; // ids[at - 1] < id < ids[at]
+            if (at > 0 && rows[at - 1] == DEAD) {
+                slot = at - 1;
+            } else if (at < used && rows[at] == DEAD) {
+                slot = at;
+            } else {
+                slot = open(at);
+            }
+        }
+        ids[slot] = id;
+        revive(slot, t);
+        nextId = Math.max(nextId, id + 1);
+        return liveBefore(slot);
+    }
+
+    /**
+     * Inserts {@code t} at {@code index}, for replaying a journal that records only positions.
+     * The task reuses a tombstone between its neighbours if there is one. Otherwise it takes
+     * the next id after its predecessor, renumbering every slot when that id is taken, so
+     * this must only be called before anything holds on to ids.
+     */
+    synchronized void insert(int index, Task t) {
+        checkIndex(index, size + 1);
+        int after = index == size ? used : slotAt(index);
+        int before = index == 0 ? -1 : slotAt(index - 1);
+        for (int slot = after - 1; slot > before; slot--) {
+            if (rows[slot] == DEAD) {
+                revive(slot, t);
+                return;
+            }
+        }
+        int slot = open(after);
+        long id = slot == 0 ? 0 : ids[slot - 1] + 1;
+        if (slot + 1 < used && id >= ids[slot + 1]) {
+            for (int i = 0; i < used; i++) {
+                ids[i] = i;
+            }
+            nextId = used;
+        } else {
+            ids[slot] = id;
+            nextId = Math.max(nextId, id + 1);
+        }
+        revive(slot, t);
+    }
+
+    @Override
+    public synchronized Task remove(int index) {
+        int slot = slotAt(checkIndex(index, size));
+        Task removed = load(slot);
+        store.clear(slot);
+        rows[slot] = DEAD;
+        bump(slot, -1);
+        size--;
+        modCount++;
+        int dead = used - size;
+        if (dead >= MIN_COMPACT && dead * 2 >= used) compact();
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] == LOADED) store.clear(slot);
+        }
+        Arrays.fill(tree, 0);
+        used = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /** Returns the ids of every task in list order. */
+    synchronized long[] ids() {
+        long[] out = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] != DEAD) out[count++] = ids[slot];
+        }
+        return out;
+    }
+
+    /** Returns the id of the task at {@code index}. */
+    synchronized long idAt(int index) {
+        return ids[slotAt(checkIndex(index, size))];
+    }
+
+    /**
+     * Marks or unmarks the task at {@code index}.
+     *
+     * @return The task in its new state.
+     */
+    synchronized Task setDone(int index, boolean done) {
+        int slot = slotAt(checkIndex(index, size));
+        decode(slot);
+        store.setDone(slot, done);
+        return store.get(slot);
+    }
+
+    synchronized boolean isDone(int index) {
+        int slot = slotAt(checkIndex(index, size));
+        decode(slot);
+        return store.isDone(slot);
+    }
+
+    /** Returns whether tasks are kept in {@link TaskColumns}. */
+    boolean isColumnar() { return columns != null; }
+
+    /** Returns the 0-based positions of completed tasks in ascending order. */
+    synchronized int[] donePositions() {
+        int[] out = new int[Math.min(size, 16)];
+        int count = 0;
+        int pos = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] == DEAD) continue;
+            decode(slot);
+            if (store.isDone(slot)) {
+                if (count == out.length) out = Arrays.copyOf(out, count * 2);
+                out[count++] = pos;
+            }
+            pos++;
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Counts tasks of one type, or of every type when {@code type} is 0.
+     *
+     * @param doneOnly Whether to count only completed tasks.
+     */
+    synchronized int count(char type, boolean doneOnly) {
+        if (columns != null && (type == 0 || !doneOnly)) {
+            decodeAll();
+            return type == 0 ? (doneOnly ? columns.countDone(used) : size) : columns.countType(used, type);
+        }
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] == DEAD) continue;
+            decode(slot);
+            if ((type == 0 || store.type(slot) == type) && (!doneOnly || store.isDone(slot))) count++;
+        }
+        return count;
+    }
+
+    /** Counts deadlines without a due day. */
+    synchronized int undatedDeadlines() {
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] == DEAD) continue;
+            decode(slot);
+            if (store.type(slot) == 'D' && store.dueDay(slot) == NO_DAY) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns deadlines due between two epoch days, inclusive, ordered by day and then list order.
+     *
+     * @param undoneOnly Whether to skip completed deadlines.
+     * @param limit      Most deadlines to return, or 0 for all.
+     */
+    synchronized List<Task> dueBetween(int fromDay, int toDay, boolean undoneOnly, int limit) {
+        long[] keys;
+        int count = 0;
+        if (columns != null) {
+            decodeAll();
+            keys = columns.dueKeys(used, fromDay, toDay, undoneOnly);
+            count = keys.length;
+        } else {
+            keys = new long[16];
+            for (int slot = 0; slot < used; slot++) {
+                if (rows[slot] == DEAD) continue;
+                decode(slot);
+                int day = store.dueDay(slot);
+                if (day == NO_DAY || day < fromDay || day > toDay) continue;
+                if (undoneOnly && store.isDone(slot)) continue;
+                if (count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+                keys[count++] = (long) day << 32 | slot;
+            }
+        }
+        Arrays.sort(keys, 0, count); // by day, then slot
+        int shown = limit == 0 ? count : Math.min(limit, count);
+        List<Task> out = new ArrayList<>(shown);
+        for (int i = 0; i < shown; i++) {
+            out.add(store.get((int) keys[i]));
+        }
+        return out;
+    }
+
+    /** Returns the task with the given id, or {@code null} if it has been removed. */
+    synchronized Task byId(long id) {
+        int slot = slotOf(id, 0);
+        return slot < 0 ? null : load(slot);
+    }
+
+    /**
+     * Returns the tasks passing {@code filter} in list order. Only the given candidates are
+     * checked, if any; past {@link #PARALLEL_THRESHOLD} slots the check is split across the
+     * common fork-join pool when it has more than one worker. The workers only read, and
+     * changes wait for this monitor.
+     *
+     * @param sortedIds Candidate ids in ascending order, or {@code null} to check every task.
+     * @param count     Number of candidate ids.
+     */
+    synchronized List<Task> select(TaskFilter filter, long[] sortedIds, int count) {
+        int[] candidates = null;
+        if (sortedIds == null) {
+            decodeAll();
+        } else {
+            candidates = slotsOf(sortedIds, count);
+            for (int slot : candidates) {
+                decode(slot);
+            }
+        }
+        int n = candidates == null ? used : candidates.length;
+        int[] matches = n < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2
+                ? scan(filter, candidates, 0, n)
+                : ForkJoinPool.commonPool().invoke(new Scan(filter, candidates, 0, n));
+        List<Task> out = new ArrayList<>(matches.length);
+        for (int slot : matches) {
+            out.add(store.get(slot));
+        }
+        return out;
+    }
+
+    /**
+     * Maps ids given in ascending order to their live slots, skipping removed ones. Each
+     * search starts where the previous one ended, so sorted postings resolve in one sweep,
+     * and ids within the next few slots are found without a binary search.
+     */
+    private int[] slotsOf(long[] sortedIds, int count) {
+        int[] out = new int[count];
+        int found = 0;
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            long id = sortedIds[i];
+            int near = from;
+            int probeEnd = Math.min(used, from + 4);
+            while (near < probeEnd && ids[near] < id) near++;
+            int slot;
+            if (near < probeEnd && ids[near] == id) {
+                slot = rows[near] == DEAD ? -near - 2 : near;
+            } else if (near < probeEnd) {
+                slot = -near - 1; // passed where the id would be: it was compacted away
+            } else {
+                slot = slotOf(id, near);
+            }
+            if (slot >= 0) {
+                out[found++] = slot;
+                from = slot + 1;
+            } else {
+                from = -slot - 1;
+            }
+        }
+        return Arrays.copyOf(out, found);
+    }
+
+    /**
+     * Returns the live slots among {@code candidates[from, to)} (or slots {@code [from, to)}
+     * when there are no candidates) that pass {@code filter}, in order.
+     */
+    private int[] scan(TaskFilter filter, int[] candidates, int from, int to) {
+        int[] out = new int[16];
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            int slot = candidates == null ? i : candidates[i];
+            if (rows[slot] == DEAD) continue;
+            if (filter.type != 0 && store.type(slot) != filter.type) continue;
+            if (filter.done != null && store.isDone(slot) != filter.done) continue;
+            if (!filter.matches(store.description(slot))) continue;
+            if (found == out.length) out = Arrays.copyOf(out, found * 2);
+            out[found++] = slot;
+        }
+        return Arrays.copyOf(out, found);
+    }
+
+    /** Splits a {@link #scan} in halves down to {@link #SCAN_CHUNK}, joining results in order. */
+    private final class Scan extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final TaskFilter filter;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+
+        Scan(TaskFilter filter, int[] candidates, int from, int to) {
+            this.filter = filter;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SCAN_CHUNK) return scan(filter, candidates, from, to);
+            int mid = (from + to) >>> 1;
+            Scan left = new Scan(filter, candidates, from, mid);
+            left.fork();
+            int[] right = new Scan(filter, candidates, mid, to).compute();
+            int[] leftMatches = left.join();
+            int[] joined = Arrays.copyOf(leftMatches, leftMatches.length + right.length);
+            System.arraycopy(right, 0, joined, leftMatches.length, right.length);
+            return joined;
+        }
+    }
+
+    /** Visits every task with its id, in list order. */
+    synchronized void forEachWithId(ObjLongConsumer<Task> visitor) {
+        for (int slot = 0; slot < used; slot++) {
+            if (rows[slot] != DEAD) visitor.accept(load(slot), ids[slot]);
+        }
+    }
+
+    /**
+     * Visits every unfinished deadline and event with its id, in list order. Rows the
+     * loader's hint rules out are skipped without being decoded.
+     */
+    synchronized void forEachDated(ObjLongConsumer<Task> visitor) {
+        for (int slot = 0; slot < used; slot++) {
+            int row = rows[slot];
+            if (row == DEAD) continue;
+            boolean skip = row >= 0
+                    ? dated != null && !dated.test(row)
+                    : store.type(slot) == 'T' || store.isDone(slot);
+            if (!skip) visitor.accept(load(slot), ids[slot]);
+        }
+    }
+
+    /** Returns the 0-based position of the task with the given id, or -1 if it has been removed. */
+    synchronized int positionOf(long id) {
+        int slot = slotOf(id, 0);
+        return slot < 0 ? -1 : liveBefore(slot);
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<Task>() {
+            private int slot = 0;
+            private int seen = 0;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                synchronized (TaskSlots.this) {
+                    return seen < size;
+                }
+            }
+
+            @Override
+            public Task next() {
+                synchronized (TaskSlots.this) {
+                    if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                    if (seen >= size) throw new NoSuchElementException();
+                    while (rows[slot] == DEAD) slot++;
+                    seen++;
+                    return load(slot++);
+                }
+            }
+        };
+    }
+
+    private Task load(int slot) {
+        decode(slot);
+        return store.get(slot);
+    }
+
+    /** Decodes every slot that still only remembers its source row, once. */
+    private void decodeAll() {
+        if (loader == null || decodedAll) return;
+        for (int slot = 0; slot < used; slot++) {
+            decode(slot);
+        }
+        decodedAll = true;
+    }
+
+    /** Decodes a slot that still only remembers its source row. */
+    private void decode(int slot) {
+        if (rows[slot] >= 0) {
+            store.set(slot, loader.apply(rows[slot]));
+            rows[slot] = LOADED;
+        }
+    }
+
+    /**
+     * Finds the live slot holding {@code id}, searching from {@code from}. Returns
+     * {@code -(insertion slot) - 1} when the id is not live.
+     */
+    private int slotOf(long id, int from) {
+        int found = Arrays.binarySearch(ids, from, used, id);
+        if (found < 0) return found;
+        return rows[found] == DEAD ? -found - 2 : found;
+    }
+
+    /** Finds the slot of the live task at 0-based {@code index} by descending the tree. */
+    private int slotAt(int index) {
+        int pos = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] < remaining) {
+                pos = next;
+                remaining -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    /** Counts live slots before {@code slot}. */
+    private int liveBefore(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void bump(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /** Rebuilds the tree from {@code rows} in O(n). */
+    private void rebuildTree() {
+        Arrays.fill(tree, 0);
+        for (int i = 1; i < tree.length; i++) {
+            if (i <= used && rows[i - 1] != DEAD) tree[i]++;
+            int parent = i + (i & -i);
+            if (parent < tree.length) tree[parent] += tree[i];
+        }
+    }
+
+    /** Fills the dead {@code slot} with {@code t}. */
+    private void revive(int slot, Task t) {
+        store.set(slot, t);
+        rows[slot] = LOADED;
+        bump(slot, 1);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Shifts slots from {@code at} up by one and returns the dead slot left at {@code at}
+     * (which may have moved if growing had to compact). O(n).
+     */
+    private int open(int at) {
+        if (used == rows.length) {
+            long firstAfter = at < used ? ids[at] : Long.MAX_VALUE;
+            grow();
+            at = firstAfter == Long.MAX_VALUE ? used : Arrays.binarySearch(ids, 0, used, firstAfter);
+        }
+        for (int slot = used - 1; slot >= at; slot--) {
+            store.move(slot, slot + 1);
+        }
+        System.arraycopy(rows, at, rows, at + 1, used - at);
+        System.arraycopy(ids, at, ids, at + 1, used - at);
+        rows[at] = DEAD;
+        used++;
+        rebuildTree();
+        return at;
+    }
+
+    /** Reclaims tombstones if there are any, otherwise grows by half. */
+    private void grow() {
+        if (used > size) {
+            compact();
+            if (used < rows.length) return;
+        }
+        int capacity = rows.length + (rows.length >> 1);
+        store.resize(capacity);
+        rows = Arrays.copyOf(rows, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        tree = new int[capacity + 1];
+        rebuildTree();
+    }
+
+    /** Slides live slots down over the tombstones, keeping their order. */
+    private void compact() {
+        int to = 0;
+        for (int from = 0; from < used; from++) {
+            if (rows[from] == DEAD) continue;
+            store.move(from, to);
+            rows[to] = rows[from];
+            ids[to] = ids[from];
+            to++;
+        }
+        used = to;
+        rebuildTree();
+    }
+
+    /** One task object per slot; the default store. */
+    private static final class ObjectStore implements Store {
+        private Task[] slots;
+
+        ObjectStore(int capacity) {
+            slots = new Task[capacity];
+        }
+
+        @Override
+        public Task get(int slot) { return slots[slot]; }
+
+        @Override
+        public void set(int slot, Task t) { slots[slot] = t; }
+
+        @Override
+        public void clear(int slot) { slots[slot] = null; }
+
+        @Override
+        public void move(int from, int to) {
+            if (from == to) return;
+            slots[to] = slots[from];
+            slots[from] = null;
+        }
+
+        @Override
+        public void resize(int capacity) { slots = Arrays.copyOf(slots, capacity); }
+
+        @Override
+        public boolean isDone(int slot) { return slots[slot].isDone(); }
+
+        @Override
+        public void setDone(int slot, boolean done) {
+            if (done) {
+                slots[slot].mark();
+            } else {
+                slots[slot].unmark();
+            }
+        }
+
+        @Override
+        public String description(int slot) { return slots[slot].getDescription(); }
+
+        @Override
+        public char type(int slot) {
+            Task t = slots[slot];
+            return t instanceof ToDo ? 'T' : t instanceof Deadline ? 'D' : 'E';
+        }
+
+        @Override
+        public int dueDay(int slot) {
+            Task t = slots[slot];
+            if (!(t instanceof Deadline) || ((Deadline) t).getByDate() == null) return NO_DAY;
+            return (int) ((Deadline) t).getByDate().toEpochDay();
+        }
+    }
+
+    private static int checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bound);
+        }
+        return index;
+    }
+}
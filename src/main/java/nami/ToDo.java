@@ -9,7 +9,7 @@ public class ToDo extends Task {
     }
 
     @Override
-    public String toString() {
+    protected String render() {
         return "[T][" + getStatusIcon() + "] " + description;
     }
 }
@@ -1,113 +1,386 @@
 package nami;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
 /**
  * Handles all user-visible I/O for the text UI:
  * reading commands and printing responses in the expected format.
+ * Output is buffered; interactive sessions flush before every read, while batch sessions
+ * only flush when the buffer fills and on {@link #close()}.
  */
 public class Ui {
     private static final String LINE = "____________________________________________________________";
-    private final Scanner sc = new Scanner(System.in);
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PREVIEW = 10; // tasks echoed back by bulk commands
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final boolean batch;
+
+    public Ui() {
+        this(false);
+    }
+
+    /**
+     * Creates a UI on stdin/stdout.
+     *
+     * @param batch Whether to skip flushing between commands, for scripted input.
+     */
+    public Ui(boolean batch) {
+        this(System.in, new FileOutputStream(FileDescriptor.out), batch);
+    }
+
+    /**
+     * Creates a UI on arbitrary streams, e.g. a network session or a benchmark sink.
+     */
+    Ui(InputStream input, OutputStream output, boolean batch) {
+        Charset cs = Charset.defaultCharset();
+        this.in = new BufferedReader(new InputStreamReader(input, cs), BUFFER_SIZE);
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, cs), BUFFER_SIZE));
+        this.batch = batch;
+    }
 
     /**
      * Reads the next line from input, returning {@code null} on EOF so the caller can exit cleanly.
+     * Pending output is flushed first unless running in batch mode.
      */
     public String readCommand() {
-        return sc.hasNextLine() ? sc.nextLine() : null;
+        if (!batch) out.flush();
+        try {
+            return in.readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Flushes any buffered output; call once the session ends.
+     */
+    public void close() {
+        out.flush();
     }
 
     public void showWelcome() {
         showLine();
-        System.out.println(" Hello! I'm Nami");
-        System.out.println(" What can I do for you?");
+        out.println(" Hello! I'm Nami");
+        out.println(" What can I do for you?");
+        showLine();
+    }
+
+    /**
+     * Shows reminders that fired since the last response, up to {@link #PREVIEW} of them.
+     */
+    public void showReminders(List<String> reminders) {
+        showLine();
+        out.println(" Reminders:");
+        showPreview(reminders);
+        showLine();
+    }
+
+    public void showListening(int port) {
+        showLine();
+        out.println(" Nami is serving your tasks on localhost:" + port);
         showLine();
     }
 
     public void showBye() {
         showLine();
-        System.out.println(" Bye. Hope to see you again soon!");
+        out.println(" Bye. Hope to see you again soon!");
         showLine();
     }
 
-    public void showLine() { System.out.println(LINE); }
+    public void showLine() { out.println(LINE); }
 
     public void showError(String msg) {
         showLine();
-        System.out.println(" " + msg);
+        out.println(" " + msg);
         showLine();
     }
 
     public void showList(List<Task> tasks) {
+        showList(tasks, 0, 0);
+    }
+
+    /**
+     * Prints one page of the list, numbered by list position.
+     *
+     * @param offset Tasks to skip.
+     * @param limit  Tasks to show, or 0 for all remaining.
+     */
+    public void showList(List<Task> tasks, int offset, int limit) {
         showLine();
+        int end = pageEnd(tasks.size(), offset, limit);
         if (tasks.isEmpty()) {
-            System.out.println(" Your list is empty.");
+            out.println(" Your list is empty.");
+        } else if (offset >= tasks.size()) {
+            out.println(" There are only " + tasks.size() + " tasks in your list.");
         } else {
-            System.out.println(" Here are the tasks in your list:");
-            for (int i = 0; i < tasks.size(); i++) {
-                System.out.println(" " + (i + 1) + "." + tasks.get(i));
-            }
+            out.println(offset == 0 && end == tasks.size()
+                    ? " Here are the tasks in your list:"
+                    : " Here are tasks " + (offset + 1) + "-" + end + " of " + tasks.size() + " in your list:");
+            showNumbered(tasks, offset, end);
         }
         showLine();
     }
 
     public void showAdded(Task t, int count) {
         showLine();
-        System.out.println(" Got it. I've added this task:");
-        System.out.println("   " + t);
-        System.out.println(" Now you have " + count + " tasks in the list.");
+        out.println(" Got it. I've added this task:");
+        out.println("   " + t);
+        out.println(" Now you have " + count + " tasks in the list.");
+        showLine();
+    }
+
+    /**
+     * Confirms a task added while the saved tasks are still loading, when the count is not known yet.
+     */
+    public void showAddedWhileLoading(Task t) {
+        showLine();
+        out.println(" Got it. I've added this task:");
+        out.println("   " + t);
+        out.println(" Your saved tasks are still loading; I'll add it after them.");
         showLine();
     }
 
     public void showMarked(Task t) {
         showLine();
-        System.out.println(" Nice! I've marked this task as done:");
-        System.out.println("   " + t);
+        out.println(" Nice! I've marked this task as done:");
+        out.println("   " + t);
         showLine();
     }
 
     public void showUnmarked(Task t) {
         showLine();
-        System.out.println(" OK, I've marked this task as not done yet:");
-        System.out.println("   " + t);
+        out.println(" OK, I've marked this task as not done yet:");
+        out.println("   " + t);
         showLine();
     }
 
     public void showAlreadyMarked(Task t) {
         showLine();
-        System.out.println(" That task is already marked as done:");
-        System.out.println("   " + t);
+        out.println(" That task is already marked as done:");
+        out.println("   " + t);
         showLine();
     }
 
     public void showAlreadyUnmarked(Task t) {
         showLine();
-        System.out.println(" That task is already marked as not done:");
-        System.out.println("   " + t);
+        out.println(" That task is already marked as not done:");
+        out.println("   " + t);
         showLine();
     }
 
     public void showDeleted(Task t, int count) {
         showLine();
-        System.out.println(" Noted. I've removed this task:");
-        System.out.println("   " + t);
-        System.out.println(" Now you have " + count + " tasks in the list.");
+        out.println(" Noted. I've removed this task:");
+        out.println("   " + t);
+        out.println(" Now you have " + count + " tasks in the list.");
+        showLine();
+    }
+
+    /**
+     * Confirms a bulk mark or unmark, listing up to {@link #PREVIEW} of the changed tasks.
+     *
+     * @param unchanged Selected tasks that were already in the requested state.
+     */
+    public void showMarkedAll(List<Task> changed, int unchanged, boolean done) {
+        showLine();
+        String state = done ? "done" : "not done";
+        if (changed.isEmpty()) {
+            out.println(" Those tasks are already marked as " + state + ".");
+        } else {
+            out.println(" " + (done ? "Nice! " : "OK, ") + "I've marked " + changed.size()
+                    + (changed.size() == 1 ? " task" : " tasks") + " as " + (done ? "done:" : "not done yet:"));
+            showPreview(changed);
+            if (unchanged > 0) out.println(" (" + unchanged + " already marked as " + state + ".)");
+        }
+        showLine();
+    }
+
+    /**
+     * Confirms a bulk delete, listing up to {@link #PREVIEW} of the removed tasks.
+     */
+    public void showDeletedAll(List<Task> removed, int count) {
+        showLine();
+        if (removed.isEmpty()) {
+            out.println(" There are no completed tasks to remove.");
+        } else {
+            out.println(" Noted. I've removed " + removed.size() + (removed.size() == 1 ? " task:" : " tasks:"));
+            showPreview(removed);
+        }
+        out.println(" Now you have " + count + " tasks in the list.");
+        showLine();
+    }
+
+    /**
+     * Shows the completed tasks just moved to the archive.
+     *
+     * @param count Tasks left in the list.
+     */
+    public void showArchived(List<Task> archived, int count) {
+        showLine();
+        if (archived.isEmpty()) {
+            out.println(" There are no completed tasks to archive.");
+        } else {
+            out.println(" Noted. I've archived " + archived.size() + (archived.size() == 1 ? " task:" : " tasks:"));
+            showPreview(archived);
+        }
+        out.println(" Now you have " + count + " tasks in the list.");
         showLine();
     }
 
+    private void showPreview(List<?> shown) {
+        for (int i = 0; i < Math.min(PREVIEW, shown.size()); i++) {
+            out.println("   " + shown.get(i));
+        }
+        if (shown.size() > PREVIEW) out.println("   ...and " + (shown.size() - PREVIEW) + " more.");
+    }
+
     /**
      * Prints find results while preserving encounter order; shows a friendly message when empty.
      */
     public void showFind(List<Task> matches) {
+        showFind(matches, 0, 0);
+    }
+
+    /**
+     * Prints one page of find results.
+     *
+     * @param offset Matches to skip.
+     * @param limit  Matches to show, or 0 for all remaining.
+     */
+    public void showFind(List<Task> matches, int offset, int limit) {
         showLine();
+        int end = pageEnd(matches.size(), offset, limit);
         if (matches.isEmpty()) {
-            System.out.println(" No matching tasks found.");
+            out.println(" No matching tasks found.");
+        } else if (offset >= matches.size()) {
+            out.println(" There are only " + matches.size() + " matching tasks.");
+        } else {
+            out.println(offset == 0 && end == matches.size()
+                    ? " Here are the matching tasks in your list:"
+                    : " Here are matches " + (offset + 1) + "-" + end + " of " + matches.size() + ":");
+            showNumbered(matches, offset, end);
+        }
+        showLine();
+    }
+
+    /**
+     * Prints one page of archive search results, numbered from {@code offset + 1}.
+     *
+     * @param total Matches in the whole archive.
+     * @param torn  Whether the archive ended early, so later tasks may be missing.
+     */
+    public void showArchiveFind(List<Task> page, int offset, int total, boolean torn) {
+        showLine();
+        if (total == 0) {
+            out.println(" No matching tasks found in the archive.");
+        } else if (page.isEmpty()) {
+            out.println(" There are only " + total + " matching tasks in the archive.");
         } else {
-            System.out.println(" Here are the matching tasks in your list:");
+            out.println(offset == 0 && page.size() == total
+                    ? " Here are the matching tasks in your archive:"
+                    : " Here are archived matches " + (offset + 1) + "-" + (offset + page.size())
+                            + " of " + total + ":");
+            for (int i = 0; i < page.size(); i++) {
+                out.println(" " + (offset + i + 1) + "." + page.get(i));
+            }
+        }
+        if (torn) out.println(" The archive ends in the middle of a write, so later tasks may be missing.");
+        showLine();
+    }
+
+    private static int pageEnd(int size, int offset, int limit) {
+        return limit == 0 ? size : (int) Math.min(size, (long) offset + limit);
+    }
+
+    /**
+     * Prints {@code tasks[from, to)} as numbered lines, writing each piece straight to the
+     * buffered output rather than concatenating a line first.
+     */
+    private void showNumbered(List<Task> tasks, int from, int to) {
+        Iterator<Task> it = tasks.listIterator(from);
+        for (int i = from; i < to; i++) {
+            out.print(' ');
+            out.print(i + 1);
+            out.print('.');
+            out.println(it.next());
+        }
+    }
+
+    /**
+     * Prints deadlines from a {@code due} query, noting legacy deadlines that have no date.
+     */
+    public void showDue(List<Task> matches, int undated) {
+        showLine();
+        if (matches.isEmpty()) {
+            out.println(" No deadlines are due then.");
+        } else {
+            out.println(" Here are the deadlines due then:");
             for (int i = 0; i < matches.size(); i++) {
-                System.out.println(" " + (i + 1) + "." + matches.get(i));
+                out.println(" " + (i + 1) + "." + matches.get(i));
             }
         }
+        if (undated > 0) {
+            out.println(" (" + undated + " deadline(s) without a yyyy-MM-dd date are not included.)");
+        }
+        showLine();
+    }
+
+    /**
+     * Confirms an {@code undo} or {@code redo}, listing up to {@link #PREVIEW} of the tasks it changed.
+     *
+     * @param change The command that was undone or redone, e.g. {@code delete}.
+     * @param count  Tasks in the list afterwards.
+     */
+    public void showUndone(String change, List<Task> tasks, int count, boolean redo) {
+        showLine();
+        out.println(" OK, I've " + (redo ? "redone the " : "undone the last ") + change + " of "
+                + tasks.size() + (tasks.size() == 1 ? " task:" : " tasks:"));
+        showPreview(tasks);
+        out.println(" Now you have " + count + " tasks in the list.");
+        showLine();
+    }
+
+    /**
+     * Prints the events found by {@code on} or {@code overlaps}, noting how many events
+     * could not be checked because their times are free-form.
+     */
+    public void showEvents(List<Task> matches, int unstructured) {
+        showLine();
+        if (matches.isEmpty()) {
+            out.println(" No events take place then.");
+        } else {
+            out.println(" Here are the events taking place then:");
+            for (int i = 0; i < matches.size(); i++) {
+                out.println(" " + (i + 1) + "." + matches.get(i));
+            }
+        }
+        if (unstructured > 0) {
+            out.println(" (" + unstructured + " event(s) without yyyy-MM-dd HH:mm times are not included.)");
+        }
+        showLine();
+    }
+
+    /**
+     * Prints the report of the {@code stats} command, one measurement per line.
+     */
+    public void showStats(List<String> lines) {
+        showLine();
+        out.println(" Here is what I have measured so far:");
+        for (String line : lines) {
+            out.println(" " + line);
+        }
         showLine();
     }
 }